@@ -0,0 +1,667 @@
+package logic;
+import java.io.*;
+import java.util.*;
+
+// A conflict-driven clause learning (CDCL) solver built on the watched
+// literal propagation and assignment trail of SimpleDPLL.  Instead of
+// chronologically trying both values of every decision, each conflict
+// is analyzed through the implication graph (the reason clause of each
+// implied literal) to derive a 1-UIP clause, which is learned and the
+// search jumps back to the level where that clause becomes unit.  See
+// the Chaff and MiniSat papers.
+public class CDCLSolver extends SimpleDPLL {
+
+	///////////////////////////////////////////////////////////////////////////
+	// Member variables
+	///////////////////////////////////////////////////////////////////////////
+
+	// Restart policies (RESTART_DEFAULT leaves the solver's own choice)
+	public static final int RESTART_DEFAULT = -1;
+	public static final int RESTART_NONE    = 0;
+	public static final int RESTART_LUBY    = 1;
+	public static final int RESTART_GLUCOSE = 2;
+	
+	// Luby restarts happen after luby(i) * LUBY_UNIT conflicts
+	public static final int LUBY_UNIT = 100;
+	
+	// Glucose restarts happen when the average LBD of the last 
+	// LBD_WINDOW learned clauses times GLUCOSE_K exceeds the average LBD
+	// of all learned clauses (i.e., recent clauses are comparatively bad)
+	public static final int    LBD_WINDOW = 50;
+	public static final double GLUCOSE_K  = 0.8;
+
+	// Learned clause deletion (as in Glucose): after REDUCE_BASE new
+	// learned clauses (and REDUCE_INC more after each reduction) the half
+	// with the highest LBD is deleted.  Glue clauses (LBD up to 
+	// GLUE_LBD) and the reasons of assigned literals are always kept.
+	public static final int REDUCE_BASE = 2000;
+	public static final int REDUCE_INC  = 300;
+	public static final int GLUE_LBD    = 2;
+
+	// Search statistics
+	public long _nConflicts;
+	public long _nDecisions;
+	public int  _nLearnts;
+	public int  _nRestarts;
+	public int  _nDeleted;    // Learned clauses deleted by reduceDB()
+	public int  _nImported;   // Clauses imported from other workers
+	public int  _nReductions;
+	
+	// Restart state
+	public int    _nRestartPolicy;
+	public long   _nConflictsSinceRestart;
+	public long   _nRestartLimit;
+	public int[]  _lbdWindow;    // Circular queue of recent LBDs
+	public int    _nLbdWindowSize;
+	public long   _nLbdWindowSum;
+	public long   _nLbdTotalSum;
+	
+	// Per-level stamps used to count the distinct levels (LBD) of a clause
+	public int[]  _levelStamp;
+	public int    _nStamp;
+
+	// LBD of each learned clause by clause id (0 for other clauses), the
+	// number of learned clauses in the arena and the size that triggers
+	// the next reduceDB()
+	public int[]  _clauseLBD;
+	public int    _nLiveLearnts;
+	public int    _nReduceLimit;
+
+	// Marks vars already visited during conflict analysis
+	public boolean[] _seen;
+
+	// Scratch buffer for the clause being learned
+	public int[] _learnt;
+
+	// The decision level to backjump to after analyze()
+	public int _nBackjumpLevel;
+	
+	// Incremental state: set once the clauses are UNSAT without any 
+	// assumptions
+	public boolean _bRootUnsat;
+	
+	// Clause sharing within a portfolio (null if not shared): learned 
+	// clauses of up to PortfolioSolver.SHARE_MAX_LENGTH literals are 
+	// published, and those of other workers are imported after every
+	// backjump (and restart)
+	public PortfolioSolver.ClauseExchange _exchange;
+	public int _nWorkerID;
+	public int _nExchangeRead;
+
+	///////////////////////////////////////////////////////////////////////////
+	// Constructor
+	///////////////////////////////////////////////////////////////////////////
+
+	public CDCLSolver() {
+		super();
+		_nBranchHeuristic = BRANCH_VSIDS;
+		_nRestartPolicy = RESTART_LUBY;
+		_bPhaseSaving = true;
+	}
+
+	///////////////////////////////////////////////////////////////////////////
+	// Main CDCL methods
+	///////////////////////////////////////////////////////////////////////////
+
+	// The main entry point to the sat solver... returns true if
+	// clauses are unsatisfiable.
+	public boolean unsat() {
+		reset();
+		if (initWatches())
+			return true;
+
+		return search(null);
+	}
+	
+	// Clears the assignment, statistics and search state
+	public void reset() {
+		_nDepth = 0;
+		_nMaxDepth = 0;
+		_nConflicts = 0;
+		_nDecisions = 0;
+		_nLearnts = 0;
+		_nRestarts = 0;
+		_nDeleted = 0;
+		_nImported = 0;
+		_nReductions = 0;
+		_nConflictsSinceRestart = 0;
+		_nRestartLimit = luby(1) * LUBY_UNIT;
+		_lbdWindow = new int[LBD_WINDOW];
+		_nLbdWindowSize = 0;
+		_nLbdWindowSum = 0;
+		_nLbdTotalSum = 0;
+		_levelStamp = new int[_nVars + 1];
+		_nStamp = 0;
+		_clauseLBD = new int[Math.max(_clauses._start.length, 16)];
+		_nLiveLearnts = 0;
+		_nReduceLimit = REDUCE_BASE;
+		for (int var = 1; var <= _nVars; var++)
+			_assign[var] = VAL_UNASSIGNED;
+		_nTrailSize = 0;
+		_nQueueHead = 0;
+		_nLevel = 0;
+		_seen = new boolean[_nVars + 1];
+		_learnt = new int[_nVars + 1];
+		_bRootUnsat = false;
+		_bInterrupted = false;
+		_model = null;
+		_nExchangeRead = 0;
+		initHeuristic();
+	}
+
+	// The iterative CDCL loop: propagate, and on conflict learn a clause
+	// and backjump, otherwise restart if the policy says so or make a new
+	// decision.  The assumption literals (if not null) are decided first,
+	// one per decision level.  Learned clauses may contain negated 
+	// assumptions, but backjumping never goes below the assumption levels
+	// (except for learned units, which go to level 0), so the assumptions
+	// are not decided again after each conflict.  Returns true if UNSAT
+	// (under the assumptions); otherwise the model is saved in _model.
+	public boolean search(int[] assumptions) {
+		while (true) {
+			if (stopRequested())
+				return true; // Cancelled (the result is ignored)
+			if (propagate()) {
+				++_nConflicts;
+				++_nConflictsSinceRestart;
+				if (_nLevel == 0) {
+					_bRootUnsat = true;
+					return true; // Conflict without any decisions
+				}
+
+				int[] learnt = analyze(_nConflict);
+				int lbd = computeLBD(learnt);
+				recordLBD(lbd);
+				if (_exchange != null && learnt.length <= PortfolioSolver.SHARE_MAX_LENGTH)
+					_exchange.publish(_nWorkerID, learnt);
+				if (_order != null)
+					decayVarActivity();
+				if (learnt.length == 1) {
+					cancelUntil(0);
+					enqueue(learnt[0]); // Learned unit, now at level 0
+				} else {
+					// The clause is unit at any level from the backjump level
+					// up to (not including) the conflict level
+					int levels = assumptions == null ? 0 : Math.min(assumptions.length, _nLevel - 1);
+					cancelUntil(Math.max(_nBackjumpLevel, levels));
+					int clause_id = attachLearnt(learnt, learnt.length, lbd);
+					++_nLearnts;
+					enqueue(learnt[0], clause_id);
+					if (_nLiveLearnts >= _nReduceLimit)
+						reduceDB();
+				}
+				if (_exchange != null && importClauses())
+					return true;
+			} else if (restartDue()) {
+				// Learned clauses and phases are kept, so a restart only
+				// gives up the current (possibly unlucky) decisions
+				cancelUntil(0);
+				++_nRestarts;
+				_nConflictsSinceRestart = 0;
+				_nLbdWindowSize = 0;
+				_nLbdWindowSum = 0;
+				_nRestartLimit = luby(_nRestarts + 1) * LUBY_UNIT;
+				if (_exchange != null && importClauses())
+					return true;
+			} else {
+				int next = 0;
+				while (assumptions != null && _nLevel < assumptions.length) {
+					int p = assumptions[_nLevel];
+					int value = valueOf(p);
+					if (value == VAL_TRUE)
+						newDecisionLevel(); // Already holds, keep levels aligned
+					else if (value == VAL_FALSE)
+						return true; // UNSAT under the assumptions
+					else {
+						next = p;
+						break;
+					}
+				}
+				
+				if (next == 0) {
+					int var = chooseBranchVar();
+					if (var < 0) {
+						_model = Arrays.copyOf(_assign, _nVars + 1);
+						return false; // All vars assigned without conflict
+					}
+					next = choosePhase(var);
+				}
+
+				++_nDecisions;
+				newDecisionLevel();
+				if (_nLevel > _nMaxDepth)
+					_nMaxDepth = _nLevel;
+				enqueue(next);
+			}
+		}
+	}
+
+	// Derives the first unique implication point (1-UIP) clause from
+	// the conflicting clause by resolving backwards along the trail with
+	// the reasons of the current level's literals until only one of them
+	// remains.  The asserting literal is returned at position 0 and the
+	// literal with the highest remaining level at position 1 (so both
+	// can be watched), and _nBackjumpLevel is set to that level.  Every
+	// var involved has its VSIDS activity bumped.
+	public int[] analyze(int conflict) {
+		int path_count = 0;
+		int p = 0;
+		int out_size = 1; // Position 0 is reserved for the asserting literal
+		int index = _nTrailSize - 1;
+		int clause = conflict;
+
+		do {
+			if (_clauseLBD[clause] > GLUE_LBD)
+				updateLBD(clause);
+			
+			// The implied literal of a reason clause is at position 0
+			int start = _clauses._start[clause];
+			int end = start + _clauses._length[clause];
+			for (int j = start + (p == 0 ? 0 : 1); j < end; j++) {
+				int q = _clauses._lits[j];
+				int var = q > 0 ? q : -q;
+				if (_seen[var] || _varLevel[var] == 0)
+					continue;
+				_seen[var] = true;
+				if (_order != null)
+					bumpVarActivity(var);
+				if (_varLevel[var] >= _nLevel)
+					++path_count;
+				else
+					_learnt[out_size++] = q;
+			}
+
+			// Select the next seen literal on the trail to resolve on
+			while (!_seen[var(_trail[index--])]);
+			p = _trail[index + 1];
+			_seen[var(p)] = false;
+			--path_count;
+			if (path_count > 0)
+				clause = _reason[var(p)];
+
+		} while (path_count > 0);
+		_learnt[0] = -p;
+
+		// Find the backjump level and clear the seen flags
+		_nBackjumpLevel = 0;
+		int max_index = 1;
+		for (int j = 1; j < out_size; j++) {
+			int var = var(_learnt[j]);
+			_seen[var] = false;
+			if (_varLevel[var] > _nBackjumpLevel) {
+				_nBackjumpLevel = _varLevel[var];
+				max_index = j;
+			}
+		}
+
+		int[] learnt = Arrays.copyOf(_learnt, out_size);
+		if (out_size > 1) {
+			int tmp = learnt[1];
+			learnt[1] = learnt[max_index];
+			learnt[max_index] = tmp;
+		}
+		return learnt;
+	}
+
+	///////////////////////////////////////////////////////////////////////////
+	// Learned clause database
+	///////////////////////////////////////////////////////////////////////////
+
+	// Every clause is attached through here so _clauseLBD covers all ids
+	// (as 0 unless attachLearnt() sets it)
+	public int attachClause(int[] lits, int len) {
+		int clause_id = super.attachClause(lits, len);
+		if (clause_id >= _clauseLBD.length)
+			_clauseLBD = Arrays.copyOf(_clauseLBD, _clauses._start.length);
+		_clauseLBD[clause_id] = 0;
+		return clause_id;
+	}
+	
+	// Attaches a learned clause lits[0..len) (of two or more literals)
+	// with its LBD
+	public int attachLearnt(int[] lits, int len, int lbd) {
+		int clause_id = attachClause(lits, len);
+		_clauseLBD[clause_id] = Math.max(lbd, 1);
+		++_nLiveLearnts;
+		return clause_id;
+	}
+	
+	// Lowers the LBD of a learned clause that takes part in a conflict if
+	// its literals now span fewer levels (all of them are assigned)
+	public void updateLBD(int clause_id) {
+		++_nStamp;
+		int lbd = 0;
+		int start = _clauses._start[clause_id];
+		int end = start + _clauses._length[clause_id];
+		for (int k = start; k < end && lbd < _clauseLBD[clause_id]; k++) {
+			int level = _varLevel[var(_clauses._lits[k])];
+			if (_levelStamp[level] != _nStamp) {
+				_levelStamp[level] = _nStamp;
+				++lbd;
+			}
+		}
+		if (lbd < _clauseLBD[clause_id])
+			_clauseLBD[clause_id] = lbd;
+	}
+	
+	// A clause is locked while it is the reason of an assigned literal 
+	// (its literal at position 0), and must then not be deleted
+	public boolean isLocked(int clause_id) {
+		int var = var(_clauses.get(clause_id, 0));
+		return _reason[var] == clause_id && _assign[var] != VAL_UNASSIGNED;
+	}
+	
+	// Deletes the worse half of the learned clauses (by LBD, and the older
+	// of equal ones), keeping glue and locked clauses, then compacts the
+	// arena and translates the clause ids in the watch lists and reasons
+	public void reduceDB() {
+		int size = _clauses.size();
+		long[] order = new long[_nLiveLearnts];
+		int n = 0;
+		for (int clause_id = 0; clause_id < size; clause_id++) {
+			int lbd = _clauseLBD[clause_id];
+			if (lbd > GLUE_LBD && _clauses.isActive(clause_id) && !isLocked(clause_id))
+				order[n++] = ((long)lbd << 32) | (Integer.MAX_VALUE - clause_id);
+		}
+		Arrays.sort(order, 0, n);
+		for (int i = Math.max(0, n - (_nLiveLearnts >> 1)); i < n; i++) {
+			int clause_id = Integer.MAX_VALUE - (int)order[i];
+			_clauses.remove(clause_id);
+			_clauseLBD[clause_id] = 0;
+			--_nLiveLearnts;
+			++_nDeleted;
+		}
+		++_nReductions;
+		_nReduceLimit = _nLiveLearnts + REDUCE_BASE + _nReductions * REDUCE_INC;
+		
+		int[] map = _clauses.compact();
+		int[] lbds = new int[_clauseLBD.length];
+		for (int clause_id = 0; clause_id < size; clause_id++)
+			if (map[clause_id] >= 0)
+				lbds[map[clause_id]] = _clauseLBD[clause_id];
+		_clauseLBD = lbds;
+		for (int index = 0; index < _watches.length; index++) {
+			int[] list = _watches[index];
+			int keep = 0;
+			for (int w = 0; w < _watchCount[index]; w++) {
+				int clause_id = list[w] < size ? map[list[w]] : -1;
+				if (clause_id >= 0)
+					list[keep++] = clause_id;
+			}
+			_watchCount[index] = keep;
+		}
+		for (int t = 0; t < _nTrailSize; t++) {
+			int var = var(_trail[t]);
+			if (_reason[var] >= 0)
+				_reason[var] = map[_reason[var]];
+		}
+	}
+
+	///////////////////////////////////////////////////////////////////////////
+	// Incremental interface
+	///////////////////////////////////////////////////////////////////////////
+
+	// Starts an empty problem over nvars vars.  Clauses and vars can then
+	// be added between calls to unsat(assumptions), and learned clauses
+	// are kept from one call to the next.
+	public void initIncremental(int nvars) {
+		init(nvars, 64);
+		reset();
+		_watches = new int[(_nVars + 1) << 1][];
+		_watchCount = new int[(_nVars + 1) << 1];
+	}
+	
+	// Grows all per-var arrays to hold vars 1..nvars
+	public void ensureVars(int nvars) {
+		if (nvars <= _nVars)
+			return;
+		cancelUntil(0);
+		int old_vars = _nVars;
+		_nVars = nvars;
+		_assign = Arrays.copyOf(_assign, nvars + 1);
+		_assignCount = Arrays.copyOf(_assignCount, nvars + 1);
+		_trail = Arrays.copyOf(_trail, nvars + 1);
+		_trailLim = Arrays.copyOf(_trailLim, Math.max(_trailLim.length, nvars + 1));
+		_varLevel = Arrays.copyOf(_varLevel, nvars + 1);
+		_reason = Arrays.copyOf(_reason, nvars + 1);
+		_seen = Arrays.copyOf(_seen, nvars + 1);
+		_learnt = Arrays.copyOf(_learnt, nvars + 1);
+		_levelStamp = Arrays.copyOf(_levelStamp, Math.max(_levelStamp.length, nvars + 1));
+		_phase = Arrays.copyOf(_phase, nvars + 1);
+		for (int var = old_vars + 1; var <= nvars; var++)
+			_phase[var] = initialPhase();
+		_watches = Arrays.copyOf(_watches, (nvars + 1) << 1);
+		_watchCount = Arrays.copyOf(_watchCount, (nvars + 1) << 1);
+		if (_order != null) {
+			_activity = Arrays.copyOf(_activity, nvars + 1);
+			_order.resize(_activity);
+			for (int var = old_vars + 1; var <= nvars; var++)
+				_order.insert(var);
+		}
+	}
+	
+	// Adds a clause at decision level 0.  Literals that are false at the
+	// root are dropped and clauses satisfied at the root are skipped; a
+	// resulting unit clause is propagated immediately.
+	public void addIncrementalClause(int[] lits) {
+		cancelUntil(0);
+		if (_bRootUnsat)
+			return;
+		
+		int len = 0;
+		if (_clauseBuf.length < lits.length)
+			_clauseBuf = new int[lits.length << 1];
+		for (int literal : lits) {
+			ensureVars(var(literal));
+			int value = valueOf(literal);
+			if (value == VAL_TRUE)
+				return;
+			if (value == VAL_UNASSIGNED)
+				_clauseBuf[len++] = literal;
+		}
+		Arrays.sort(_clauseBuf, 0, len);
+		int unique = 0;
+		for (int k = 0; k < len; k++)
+			if (unique == 0 || _clauseBuf[k] != _clauseBuf[unique - 1])
+				_clauseBuf[unique++] = _clauseBuf[k];
+		
+		++_nClauses;
+		if (unique == 0)
+			_bRootUnsat = true;
+		else if (unique == 1) {
+			enqueue(_clauseBuf[0]);
+			if (propagate())
+				_bRootUnsat = true;
+		} else
+			attachClause(_clauseBuf, unique);
+	}
+	
+	// Returns true if the clauses are unsatisfiable under the assumption
+	// literals; otherwise _model holds a satisfying assignment.  The
+	// solver is left at decision level 0 so clauses can be added.
+	public boolean unsat(int[] assumptions) {
+		cancelUntil(0);
+		if (_bRootUnsat)
+			return true;
+		ensureLevels(_nVars + (assumptions == null ? 0 : assumptions.length));
+		boolean unsat = search(assumptions);
+		cancelUntil(0);
+		return unsat;
+	}
+
+	// Grows the per-level arrays to hold levels 0..nlevels.  Each var
+	// opens at most one level, but an assumption that already holds (e.g.,
+	// a duplicate) opens an empty one to keep the levels aligned.
+	public void ensureLevels(int nlevels) {
+		if (nlevels < _trailLim.length)
+			return;
+		_trailLim = Arrays.copyOf(_trailLim, nlevels + 1);
+		_levelStamp = Arrays.copyOf(_levelStamp, nlevels + 1);
+	}
+	
+	// Adds the clauses other workers published since the last import
+	// (see importClause()); returns true if that makes the clauses UNSAT
+	public boolean importClauses() {
+		if (_exchange._nSize == _nExchangeRead)
+			return _bRootUnsat;
+		ArrayList<int[]> clauses = new ArrayList<int[]>();
+		_nExchangeRead = _exchange.fetch(_nWorkerID, _nExchangeRead, clauses);
+		for (int[] clause : clauses)
+			importClause(clause);
+		_nImported += clauses.size();
+		return _bRootUnsat;
+	}
+	
+	// Adds another worker's learned clause at the current decision level,
+	// as a learned clause (with its length as LBD).  The watches go to 
+	// the best two literals: true or unassigned ones first, then false
+	// ones by decreasing level.  A clause that is false here is made unit
+	// by undoing its highest level, and a unit clause is propagated like
+	// a learned one (learned units go to level 0).
+	public void importClause(int[] clause) {
+		if (_bRootUnsat)
+			return;
+		int len = 0;
+		if (_clauseBuf.length < clause.length)
+			_clauseBuf = new int[clause.length << 1];
+		for (int literal : clause) {
+			int value = valueOf(literal);
+			if (value != VAL_UNASSIGNED && _varLevel[var(literal)] == 0) {
+				if (value == VAL_TRUE)
+					return; // Satisfied at the root
+				continue;   // False at the root
+			}
+			_clauseBuf[len++] = literal;
+		}
+		if (len == 0) {
+			_bRootUnsat = true;
+			return;
+		}
+		
+		moveBestWatch(0, len);
+		if (len > 1)
+			moveBestWatch(1, len);
+		int first = _clauseBuf[0];
+		if (valueOf(first) == VAL_FALSE)
+			cancelUntil(_varLevel[var(first)] - 1);
+		if (len == 1) {
+			cancelUntil(0);
+			enqueue(first);
+			return;
+		}
+		int clause_id = attachLearnt(_clauseBuf, len, len);
+		if (valueOf(first) == VAL_UNASSIGNED && valueOf(_clauseBuf[1]) == VAL_FALSE)
+			enqueue(first, clause_id);
+	}
+	
+	// Swaps the best literal of _clauseBuf[from..len) to position from:
+	// a non-false literal if any, otherwise the one with the highest level
+	public void moveBestWatch(int from, int len) {
+		int best = from;
+		for (int k = from; k < len; k++) {
+			int literal = _clauseBuf[k];
+			if (valueOf(literal) != VAL_FALSE) {
+				best = k;
+				break;
+			}
+			if (_varLevel[var(literal)] > _varLevel[var(_clauseBuf[best])])
+				best = k;
+		}
+		int tmp = _clauseBuf[from];
+		_clauseBuf[from] = _clauseBuf[best];
+		_clauseBuf[best] = tmp;
+	}
+
+	// The literal block distance (LBD) of a clause is the number of 
+	// distinct decision levels among its literals (see the Glucose paper)
+	public int computeLBD(int[] clause) {
+		++_nStamp;
+		int lbd = 0;
+		for (int literal : clause) {
+			int level = _varLevel[var(literal)];
+			if (_levelStamp[level] != _nStamp) {
+				_levelStamp[level] = _nStamp;
+				++lbd;
+			}
+		}
+		return lbd;
+	}
+	
+	// Adds an LBD to the recent window and the global average
+	public void recordLBD(int lbd) {
+		_nLbdTotalSum += lbd;
+		int pos = (int)(_nConflicts % LBD_WINDOW);
+		if (_nLbdWindowSize == LBD_WINDOW)
+			_nLbdWindowSum -= _lbdWindow[pos];
+		else
+			++_nLbdWindowSize;
+		_lbdWindow[pos] = lbd;
+		_nLbdWindowSum += lbd;
+	}
+	
+	// Whether the restart policy asks for a restart now
+	public boolean restartDue() {
+		switch (_nRestartPolicy) {
+		case RESTART_LUBY: 
+			return _nConflictsSinceRestart >= _nRestartLimit;
+		case RESTART_GLUCOSE:
+			return _nLbdWindowSize == LBD_WINDOW &&
+				((double)_nLbdWindowSum / LBD_WINDOW) * GLUCOSE_K > 
+				((double)_nLbdTotalSum / _nConflicts);
+		default:
+			return false;
+		}
+	}
+	
+	// The Luby sequence 1 1 2 1 1 2 4 1 1 2 1 1 2 4 8 ... (1-indexed)
+	public static long luby(int i) {
+		// Find the finite subsequence that contains index i and its size
+		int size = 1, seq = 0;
+		while (size < i + 1) {
+			++seq;
+			size = (size << 1) + 1;
+		}
+		int x = i - 1;
+		while (size - 1 != x) {
+			size = (size - 1) >> 1;
+			--seq;
+			x = x % size;
+		}
+		return 1L << seq;
+	}
+
+	// Var id for a literal
+	public static int var(int literal) {
+		return literal > 0 ? literal : -literal;
+	}
+
+	///////////////////////////////////////////////////////////////////////////
+	// Test routine
+	///////////////////////////////////////////////////////////////////////////
+
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.out.println("No DIMACS files provided on command line");
+			System.exit(1);
+		}
+
+		CDCLSolver cdcl = new CDCLSolver();
+
+		for (String filename : args) {
+			try {
+				cdcl.readDIMACSFile(filename);
+			} catch (IOException e) {
+				System.out.println("Error reading '" + filename + "': " + e.getMessage());
+				continue;
+			}
+			long cur_time = System.currentTimeMillis();
+			System.out.print(filename + " -> "
+					+ (cdcl.unsat() ? "UNSATISFIABLE" : "SATISFIABLE"));
+			System.out.println(" (" + (System.currentTimeMillis() - cur_time) +
+					" ms, conflicts: " + cdcl._nConflicts + ", learned: " +
+					cdcl._nLearnts + ", deleted: " + cdcl._nDeleted + 
+					", restarts: " + cdcl._nRestarts + 
+					", depth: " + cdcl._nMaxDepth + ")");
+		}
+	}
+}
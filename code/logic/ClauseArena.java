@@ -0,0 +1,129 @@
+package logic;
+import java.util.*;
+
+// A flat clause database: the literals of all clauses are stored back to
+// back in one int[] and each clause id has an offset/length header,
+// instead of one boxed set of Integers per clause.  Clauses can be
+// removed, which only clears their bit in the active bitset so clause
+// ids stay stable; compact() later reclaims the space and renumbers.
+public class ClauseArena {
+
+	public int[]  _lits;     // Literals of all clauses
+	public int    _nLits;    // Number of used entries in _lits
+	public int[]  _start;    // Offset of each clause in _lits
+	public int[]  _length;   // Number of literals of each clause
+	public long[] _active;   // Bitset of clause ids that were not removed
+	public int    _nSize;    // Number of clause ids
+
+	public ClauseArena() {
+		this(16, 64);
+	}
+
+	public ClauseArena(int clauses, int lits) {
+		_lits = new int[Math.max(lits, 4)];
+		_start = new int[Math.max(clauses, 4)];
+		_length = new int[_start.length];
+		_active = new long[(_start.length + 63) >> 6];
+		_nLits = 0;
+		_nSize = 0;
+	}
+
+	// Number of clause ids (including removed clauses)
+	public int size() {
+		return _nSize;
+	}
+
+	// Appends the literals lits[from..from+len) as a new clause and
+	// returns its id
+	public int add(int[] lits, int from, int len) {
+		if (_nSize == _start.length) {
+			int capacity = _nSize << 1;
+			_start = Arrays.copyOf(_start, capacity);
+			_length = Arrays.copyOf(_length, capacity);
+			_active = Arrays.copyOf(_active, (capacity + 63) >> 6);
+		}
+		if (_nLits + len > _lits.length)
+			_lits = Arrays.copyOf(_lits, Math.max(_lits.length << 1, _nLits + len));
+		System.arraycopy(lits, from, _lits, _nLits, len);
+		int clause_id = _nSize++;
+		_start[clause_id] = _nLits;
+		_length[clause_id] = len;
+		_active[clause_id >> 6] |= 1L << clause_id;
+		_nLits += len;
+		return clause_id;
+	}
+
+	public boolean isActive(int clause_id) {
+		return (_active[clause_id >> 6] & (1L << clause_id)) != 0;
+	}
+
+	public void remove(int clause_id) {
+		_active[clause_id >> 6] &= ~(1L << clause_id);
+	}
+
+	// Drops every clause with id >= size (e.g., learned clauses)
+	public void truncate(int size) {
+		if (size >= _nSize)
+			return;
+		_nLits = _start[size];
+		for (int clause_id = size; clause_id < _nSize; clause_id++)
+			remove(clause_id);
+		_nSize = size;
+	}
+
+	public void clear() {
+		truncate(0);
+	}
+
+	// Moves the active clauses together (keeping their order) to reclaim
+	// the space of removed ones.  Clause ids change: the returned array
+	// maps each old id to its new id (-1 for removed clauses), and every
+	// id held elsewhere must be translated with it.
+	public int[] compact() {
+		int[] map = new int[_nSize];
+		int size = 0;
+		int nlits = 0;
+		for (int clause_id = 0; clause_id < _nSize; clause_id++) {
+			if (!isActive(clause_id)) {
+				map[clause_id] = -1;
+				continue;
+			}
+			int len = _length[clause_id];
+			System.arraycopy(_lits, _start[clause_id], _lits, nlits, len);
+			_start[size] = nlits;
+			_length[size] = len;
+			map[clause_id] = size++;
+			nlits += len;
+		}
+		Arrays.fill(_active, 0L);
+		for (int clause_id = 0; clause_id < size; clause_id++)
+			_active[clause_id >> 6] |= 1L << clause_id;
+		_nSize = size;
+		_nLits = nlits;
+		return map;
+	}
+	
+	// An independent copy (e.g., for another search thread, since the
+	// watched literals are reordered in place during propagation)
+	public ClauseArena copy() {
+		ClauseArena arena = new ClauseArena(_start.length, _lits.length);
+		System.arraycopy(_lits, 0, arena._lits, 0, _nLits);
+		System.arraycopy(_start, 0, arena._start, 0, _nSize);
+		System.arraycopy(_length, 0, arena._length, 0, _nSize);
+		arena._active = _active.clone();
+		arena._nLits = _nLits;
+		arena._nSize = _nSize;
+		return arena;
+	}
+
+	// Literal k of a clause
+	public int get(int clause_id, int k) {
+		return _lits[_start[clause_id] + k];
+	}
+
+	// Copies a clause into a new array
+	public int[] getClause(int clause_id) {
+		int start = _start[clause_id];
+		return Arrays.copyOfRange(_lits, start, start + _length[clause_id]);
+	}
+}
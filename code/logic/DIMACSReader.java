@@ -0,0 +1,191 @@
+package logic;
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+// Loads a DIMACS CNF file into a solver.  The file is memory-mapped
+// (in windows of WINDOW_SIZE bytes, so files over 2GB work too) and
+// scanned byte by byte with a small state machine that parses literals
+// straight into an int buffer and hands each clause to the solver's
+// clause arena; nothing is allocated per line or per literal.  Clauses
+// may span lines and tokens may be separated by any whitespace.
+// Comments ('c') may start at any token, and a '%' ends the clauses
+// (as in the SATLIB benchmarks).  Malformed input raises a
+// FormatException giving the line.
+public class DIMACSReader {
+
+	public static final long WINDOW_SIZE = 1L << 30;
+
+	// Scanner states
+	public static final int STATE_TOKEN   = 0;
+	public static final int STATE_COMMENT = 1;
+	public static final int STATE_HEADER  = 2;
+	public static final int STATE_END     = 3;
+
+	public static class FormatException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		public int _nLine;
+
+		public FormatException(String file, int line, String message) {
+			super(file + ":" + line + ": " + message);
+			_nLine = line;
+		}
+	}
+
+	public SimpleDPLL _dpll;
+	public String _sFile;
+
+	// Scanner state
+	public int _nState;
+	public int _nLine;
+	public boolean _bHeader;     // 'p' line seen
+	public StringBuilder _sbHeader;
+	public boolean _bInNumber;
+	public boolean _bNegative;
+	public int _nValue;
+
+	// Literals of the clause being read
+	public int[] _lits;
+	public int   _nLits;
+
+	public DIMACSReader(SimpleDPLL dpll) {
+		_dpll = dpll;
+		_lits = new int[64];
+	}
+
+	// Reads a file into the solver, replacing its clauses (see
+	// SimpleDPLL.init())
+	public void read(String file) throws IOException {
+		_sFile = file;
+		_nState = STATE_TOKEN;
+		_nLine = 1;
+		_bHeader = false;
+		_sbHeader = new StringBuilder();
+		_bInNumber = false;
+		_bNegative = false;
+		_nLits = 0;
+
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			long size = channel.size();
+			for (long offset = 0; offset < size; offset += WINDOW_SIZE) {
+				MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY,
+						offset, Math.min(WINDOW_SIZE, size - offset));
+				int limit = buf.limit();
+				for (int i = 0; i < limit; i++)
+					scan(buf.get(i));
+			}
+		} finally {
+			raf.close();
+		}
+
+		// End of file
+		if (_nState == STATE_HEADER)
+			parseHeader();
+		else if (_nState == STATE_TOKEN)
+			endNumber();
+		if (!_bHeader)
+			throw error("missing 'p cnf' line");
+		if (_nLits > 0)
+			throw error("last clause is not terminated by 0");
+	}
+
+	// Advances the state machine by one byte
+	public void scan(byte b) throws IOException {
+		switch (_nState) {
+		case STATE_COMMENT:
+		case STATE_END:
+			if (b == '\n') {
+				++_nLine;
+				if (_nState == STATE_COMMENT)
+					_nState = STATE_TOKEN;
+			}
+			return;
+		case STATE_HEADER:
+			if (b == '\n') {
+				parseHeader();
+				++_nLine;
+				_nState = STATE_TOKEN;
+			} else
+				_sbHeader.append((char)b);
+			return;
+		}
+
+		if (b >= '0' && b <= '9') {
+			int digit = b - '0';
+			if (_nValue > (Integer.MAX_VALUE - digit) / 10)
+				throw error("literal out of range");
+			_nValue = _bInNumber ? _nValue * 10 + digit : digit;
+			_bInNumber = true;
+		} else if (b == ' ' || b == '\n' || b == '\t' || b == '\r' || b == '\f' || b == 0x0B) {
+			endNumber();
+			if (b == '\n')
+				++_nLine;
+		} else if (_bInNumber || _bNegative) {
+			throw error("unexpected '" + (char)b + "' in a literal");
+		} else if (b == '-') {
+			_bNegative = true;
+			_nValue = 0;
+		} else if (b == 'c') {
+			_nState = STATE_COMMENT;
+		} else if (b == 'p') {
+			if (_bHeader)
+				throw error("second 'p' line");
+			_nState = STATE_HEADER;
+		} else if (b == '%') {
+			_nState = STATE_END;
+		} else
+			throw error("unexpected character '" + (char)b + "'");
+	}
+
+	// Completes the literal being read, if any
+	public void endNumber() throws IOException {
+		if (_bNegative && !_bInNumber)
+			throw error("'-' without a var");
+		if (!_bInNumber)
+			return;
+		int literal = _bNegative ? -_nValue : _nValue;
+		_bInNumber = false;
+		_bNegative = false;
+		_nValue = 0;
+
+		if (!_bHeader)
+			throw error("clause before the 'p cnf' line");
+		if (literal == 0) {
+			_dpll.addClause(_lits, _nLits);
+			_nLits = 0;
+			return;
+		}
+		if (CDCLSolver.var(literal) > _dpll._nVars)
+			throw error("var " + CDCLSolver.var(literal) + " exceeds the " + _dpll._nVars + " declared");
+		if (_nLits == _lits.length)
+			_lits = Arrays.copyOf(_lits, _nLits << 1);
+		_lits[_nLits++] = literal;
+	}
+
+	// Parses "cnf <nvars> <nclauses>" (the text after 'p') and sets up
+	// the solver
+	public void parseHeader() throws IOException {
+		String[] split = _sbHeader.toString().trim().split("\\s+");
+		if (split.length != 3 || !split[0].equals("cnf"))
+			throw error("expected 'p cnf <vars> <clauses>' but found 'p" + _sbHeader + "'");
+		int nvars, nclauses;
+		try {
+			nvars = Integer.parseInt(split[1]);
+			nclauses = Integer.parseInt(split[2]);
+		} catch (NumberFormatException e) {
+			throw error("bad number in 'p" + _sbHeader + "'");
+		}
+		if (nvars < 0 || nclauses < 0)
+			throw error("negative count in 'p" + _sbHeader + "'");
+		_dpll.init(nvars, nclauses);
+		_bHeader = true;
+	}
+
+	public FormatException error(String message) {
+		return new FormatException(_sFile, _nLine, message);
+	}
+}
@@ -0,0 +1,106 @@
+package logic;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.GZIPOutputStream;
+
+// Writes a DIMACS CNF file through one reusable ByteBuffer: literals are
+// formatted as ASCII digits straight into the buffer, which is drained
+// to a FileChannel whenever it fills, so no String is built per clause
+// or literal.  With gzip the channel wraps a GZIPOutputStream instead.
+// The counterpart of DIMACSReader.
+public class DIMACSWriter {
+
+	public static final int BUFFER_SIZE = 1 << 16;
+	public static final int MAX_INT_CHARS = 11; // "-2147483648"
+
+	public WritableByteChannel _channel;
+	public ByteBuffer _buf;
+
+	public DIMACSWriter(String filename, boolean gzip) throws IOException {
+		FileOutputStream file = new FileOutputStream(filename);
+		_channel = gzip ? Channels.newChannel(new GZIPOutputStream(file, BUFFER_SIZE)) : file.getChannel();
+		_buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	}
+
+	public void writeHeader(int nvars, int nclauses) throws IOException {
+		writeASCII("p cnf ");
+		writeInt(nvars);
+		put((byte)' ');
+		writeInt(nclauses);
+		put((byte)'\n');
+	}
+
+	// Writes a comment line mapping a literal name to its var id
+	public void writeComment(String name, int id) throws IOException {
+		writeASCII("c ");
+		writeASCII(name);
+		writeASCII(" -> #");
+		writeInt(id);
+		put((byte)' ');
+		put((byte)'\n');
+	}
+
+	// Writes a clause of DIMACS literals followed by 0
+	public void writeClause(int[] lits) throws IOException {
+		for (int literal : lits) {
+			writeInt(literal);
+			put((byte)' ');
+		}
+		put((byte)'0');
+		put((byte)'\n');
+	}
+
+	// Formats n in decimal directly into the buffer
+	public void writeInt(int n) throws IOException {
+		if (_buf.remaining() < MAX_INT_CHARS)
+			flush();
+		if (n == Integer.MIN_VALUE) {
+			writeASCII("-2147483648");
+			return;
+		}
+		if (n < 0) {
+			_buf.put((byte)'-');
+			n = -n;
+		}
+		int start = _buf.position();
+		do {
+			_buf.put((byte)('0' + n % 10));
+			n /= 10;
+		} while (n > 0);
+		// Digits were written least significant first: reverse them
+		for (int i = start, j = _buf.position() - 1; i < j; i++, j--) {
+			byte b = _buf.get(i);
+			_buf.put(i, _buf.get(j));
+			_buf.put(j, b);
+		}
+	}
+
+	// Writes a string of single-byte chars (names are ASCII)
+	public void writeASCII(String s) throws IOException {
+		for (int i = 0; i < s.length(); i++)
+			put((byte)s.charAt(i));
+	}
+
+	public void put(byte b) throws IOException {
+		if (!_buf.hasRemaining())
+			flush();
+		_buf.put(b);
+	}
+
+	public void flush() throws IOException {
+		_buf.flip();
+		while (_buf.hasRemaining())
+			_channel.write(_buf);
+		_buf.clear();
+	}
+
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			_channel.close();
+		}
+	}
+}
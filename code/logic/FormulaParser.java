@@ -0,0 +1,225 @@
+package logic;
+import java.util.*;
+
+// Parses a formula string into the hash-consed terms of a PropKbCNF
+// (creating literals as needed).  A tokenizer splits the string into
+// names, the constants T and F, parentheses and the connectives, and
+// a precedence-climbing parser combines them.  From tightest to
+// loosest binding:
+//
+//   ~    negation (~~a is a)
+//   ^    conjunction  \  n-ary: a ^ b ^ c is one list of operands
+//   |    disjunction  /  (built with getConjTerm() / getDisjTerm())
+//   =>   implication, a => b => c meaning (a ^ b) => c (getImpliesTerm())
+//   <=>  equivalence, left associative
+//
+// Parentheses group as usual, so "~a ^ b | c" is (~a ^ b) | c.  A
+// name is a maximal run of characters other than whitespace and
+// "()~^|<=>".  Errors raise a FormulaParser.ParseException giving the
+// position in the string, and leave the kb unchanged (apart from new
+// literals).
+public class FormulaParser {
+
+	// Token types
+	public static final int TOK_END     = 0;
+	public static final int TOK_NAME    = 1;
+	public static final int TOK_LPAREN  = 2;
+	public static final int TOK_RPAREN  = 3;
+	public static final int TOK_NOT     = 4;
+	public static final int TOK_AND     = 5;
+	public static final int TOK_OR      = 6;
+	public static final int TOK_IMPLIES = 7;
+	public static final int TOK_EQUIV   = 8;
+
+	public static final String[] TOKEN_NAMES = { "end of formula", "name", "'('", "')'",
+		"'~'", "'^'", "'|'", "'=>'", "'<=>'" };
+
+	// Characters shown on each side of an error position
+	public static final int EXCERPT_CHARS = 40;
+
+	public static class ParseException extends IllegalArgumentException {
+		private static final long serialVersionUID = 1L;
+
+		public int _nPosition;
+
+		public ParseException(String formula, int pos, String message) {
+			super("Formula error at position " + pos + ": " + message + " in \"" + excerpt(formula, pos) + "\"");
+			_nPosition = pos;
+		}
+
+		// The text around pos (long formulas are cut with "...")
+		public static String excerpt(String formula, int pos) {
+			int from = Math.max(0, pos - EXCERPT_CHARS);
+			int to = Math.min(formula.length(), pos + EXCERPT_CHARS);
+			return (from > 0 ? "..." : "") + formula.substring(from, to) + 
+				(to < formula.length() ? "..." : "");
+		}
+	}
+
+	public PropKbCNF _kb;
+	public String _sFormula;
+	public int _nLength;
+
+	// Current token: its type, and its position and end in _sFormula
+	public int _nToken;
+	public int _nStart;
+	public int _nEnd;
+
+	public FormulaParser(PropKbCNF kb, String formula) {
+		_kb = kb;
+		_sFormula = formula;
+		_nLength = formula.length();
+		_nEnd = 0;
+	}
+
+	// Parses the whole string
+	public PropFormula.Term parse() {
+		next();
+		PropFormula.Term t = parseEquiv();
+		if (_nToken != TOK_END)
+			throw error("unexpected " + TOKEN_NAMES[_nToken]);
+		return t;
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+	// Tokenizer
+	////////////////////////////////////////////////////////////////////////////
+
+	// Reads the token after the current one
+	public void next() {
+		int pos = _nEnd;
+		while (pos < _nLength && isSpace(_sFormula.charAt(pos)))
+			++pos;
+		_nStart = pos;
+		if (pos == _nLength) {
+			_nToken = TOK_END;
+			_nEnd = pos;
+			return;
+		}
+		char c = _sFormula.charAt(pos);
+		switch (c) {
+		case '(': _nToken = TOK_LPAREN; _nEnd = pos + 1; return;
+		case ')': _nToken = TOK_RPAREN; _nEnd = pos + 1; return;
+		case '~': _nToken = TOK_NOT;    _nEnd = pos + 1; return;
+		case '^': _nToken = TOK_AND;    _nEnd = pos + 1; return;
+		case '|': _nToken = TOK_OR;     _nEnd = pos + 1; return;
+		case '=':
+			expect(pos + 1, '>');
+			_nToken = TOK_IMPLIES;
+			_nEnd = pos + 2;
+			return;
+		case '<':
+			expect(pos + 1, '=');
+			expect(pos + 2, '>');
+			_nToken = TOK_EQUIV;
+			_nEnd = pos + 3;
+			return;
+		case '>':
+			throw new ParseException(_sFormula, pos, "'>' without '=' or '<='");
+		}
+		while (pos < _nLength && !isSpecial(_sFormula.charAt(pos)))
+			++pos;
+		_nToken = TOK_NAME;
+		_nEnd = pos;
+	}
+
+	public void expect(int pos, char c) {
+		if (pos >= _nLength || _sFormula.charAt(pos) != c)
+			throw new ParseException(_sFormula, pos, "expected '" + c + "'");
+	}
+
+	public static boolean isSpace(char c) {
+		return c == ' ' || c == '\t' || c == '\r' || c == '\n';
+	}
+
+	public static boolean isSpecial(char c) {
+		return isSpace(c) || c == '(' || c == ')' || c == '~' || c == '^' ||
+			c == '|' || c == '=' || c == '<' || c == '>';
+	}
+
+	public ParseException error(String message) {
+		return new ParseException(_sFormula, _nStart, message);
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+	// Parser (one method per precedence level)
+	////////////////////////////////////////////////////////////////////////////
+
+	public PropFormula.Term parseEquiv() {
+		PropFormula.Term lhs = parseImplies();
+		while (_nToken == TOK_EQUIV) {
+			next();
+			lhs = _kb.makeBinConn(lhs, parseImplies(), PropFormula.BinConn.EQUIV);
+		}
+		return lhs;
+	}
+
+	public PropFormula.Term parseImplies() {
+		PropFormula.Term first = parseOr();
+		if (_nToken != TOK_IMPLIES)
+			return first;
+		ArrayList<PropFormula.Term> terms = new ArrayList<PropFormula.Term>();
+		terms.add(first);
+		while (_nToken == TOK_IMPLIES) {
+			next();
+			terms.add(parseOr());
+		}
+		return _kb.getImpliesTerm(terms);
+	}
+
+	public PropFormula.Term parseOr() {
+		PropFormula.Term first = parseAnd();
+		if (_nToken != TOK_OR)
+			return first;
+		ArrayList<PropFormula.Term> terms = new ArrayList<PropFormula.Term>();
+		terms.add(first);
+		while (_nToken == TOK_OR) {
+			next();
+			terms.add(parseAnd());
+		}
+		return _kb.getDisjTerm(terms);
+	}
+
+	public PropFormula.Term parseAnd() {
+		PropFormula.Term first = parseUnary();
+		if (_nToken != TOK_AND)
+			return first;
+		ArrayList<PropFormula.Term> terms = new ArrayList<PropFormula.Term>();
+		terms.add(first);
+		while (_nToken == TOK_AND) {
+			next();
+			terms.add(parseUnary());
+		}
+		return _kb.getConjTerm(terms);
+	}
+
+	// A literal, constant or parenthesized formula, under any number of
+	// negations (which cancel in pairs, and flip constants)
+	public PropFormula.Term parseUnary() {
+		boolean neg = false;
+		while (_nToken == TOK_NOT) {
+			neg = !neg;
+			next();
+		}
+
+		PropFormula.Term t;
+		if (_nToken == TOK_LPAREN) {
+			int open = _nStart;
+			next();
+			t = parseEquiv();
+			if (_nToken != TOK_RPAREN)
+				throw new ParseException(_sFormula, _nStart, "expected ')' to close '(' at position " + open +
+						" but found " + TOKEN_NAMES[_nToken]);
+		} else if (_nToken == TOK_NAME) {
+			char c = _sFormula.charAt(_nStart);
+			if (_nEnd - _nStart == 1 && (c == 'T' || c == 'F')) {
+				next();
+				return _kb.makeConstant((c == 'T') != neg);
+			}
+			t = _kb.getLiteral(_sFormula.substring(_nStart, _nEnd));
+		} else
+			throw error("expected a name, constant, '~' or '(' but found " + TOKEN_NAMES[_nToken]);
+		next();
+		return neg ? _kb.makeUnConn(t, PropFormula.UnConn.NEG) : t;
+	}
+}
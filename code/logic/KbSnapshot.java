@@ -0,0 +1,166 @@
+package logic;
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Saves and restores a PropKbCNF as a versioned binary file, so a
+// restarted reasoner need not parse and convert its axioms again.  The
+// file holds the literal table, the kb clauses as DIMACS literal arrays
+// and the consistency status, plus the axiom strings the shell shows.
+// Both directions go through a memory-mapped FileChannel.  Layout (all
+// ints big-endian, strings as an int byte count and UTF-8 bytes):
+//
+//   int MAGIC, int VERSION
+//   int n, then the names of literals 1..n
+//   byte PG flag, byte kb status, int m, m witness bytes
+//   int c, int l, the c clause lengths, then all l literals
+//   int a, then a axiom strings
+//
+// Open push() scopes are not saved: the loaded kb holds all clauses.
+public class KbSnapshot {
+
+	public static final int MAGIC   = 0x50524b42; // "PRKB"
+	public static final int VERSION = 1;
+
+	public static class FormatException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		public FormatException(String file, String message) {
+			super(file + ": " + message);
+		}
+	}
+
+	// Writes the kb (and the axioms that produced it) to filename
+	public static void save(PropKbCNF kb, String filename, List<String> axioms) throws IOException {
+		int nlits = kb._nLiteralIDCount - 1;
+		byte[][] names = new byte[nlits + 1][];
+		long size = 12;
+		for (int id = 1; id <= nlits; id++) {
+			names[id] = kb.getLiteral(id)._sName.getBytes(StandardCharsets.UTF_8);
+			size += 4 + names[id].length;
+		}
+		byte[] witness = kb._kbWitness == null ? new byte[0] : kb._kbWitness;
+		size += 6 + witness.length + 8;
+		for (int[] clause : kb._alKbClauses)
+			size += 4 + 4 * clause.length;
+		byte[][] axiom_bytes = new byte[axioms.size()][];
+		size += 4;
+		for (int i = 0; i < axiom_bytes.length; i++) {
+			axiom_bytes[i] = axioms.get(i).getBytes(StandardCharsets.UTF_8);
+			size += 4 + axiom_bytes[i].length;
+		}
+		if (size > Integer.MAX_VALUE)
+			throw new IOException(filename + ": kb too large for one snapshot");
+
+		RandomAccessFile raf = new RandomAccessFile(filename, "rw");
+		try {
+			raf.setLength(size);
+			MappedByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+			buf.putInt(MAGIC);
+			buf.putInt(VERSION);
+			buf.putInt(nlits);
+			for (int id = 1; id <= nlits; id++)
+				putBytes(buf, names[id]);
+			buf.put((byte)(kb._bPGClauses ? 1 : 0));
+			buf.put((byte)kb._nKbStatus);
+			putBytes(buf, witness);
+			int total = 0;
+			for (int[] clause : kb._alKbClauses)
+				total += clause.length;
+			buf.putInt(kb._alKbClauses.size());
+			buf.putInt(total);
+			for (int[] clause : kb._alKbClauses)
+				buf.putInt(clause.length);
+			for (int[] clause : kb._alKbClauses)
+				for (int literal : clause)
+					buf.putInt(literal);
+			buf.putInt(axiom_bytes.length);
+			for (byte[] axiom : axiom_bytes)
+				putBytes(buf, axiom);
+			buf.force();
+		} finally {
+			raf.close();
+		}
+	}
+
+	// Restores a snapshot into kb, which must be new (no literals or
+	// clauses yet); the saved axiom strings are appended to axioms
+	public static void load(PropKbCNF kb, String filename, List<String> axioms) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(filename, "r");
+		try {
+			long size = raf.length();
+			if (size > Integer.MAX_VALUE)
+				throw new FormatException(filename, "not a kb snapshot");
+			MappedByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+			if (size < 8 || buf.getInt() != MAGIC)
+				throw new FormatException(filename, "not a kb snapshot");
+			int version = buf.getInt();
+			if (version != VERSION)
+				throw new FormatException(filename, "snapshot version " + version +
+						" (this reasoner reads version " + VERSION + ")");
+
+			int nlits = buf.getInt();
+			for (int id = 1; id <= nlits; id++)
+				if (kb.getLiteral(getString(buf, filename))._nID != id)
+					throw new FormatException(filename, "duplicate literal name for #" + id);
+			boolean pg = buf.get() != 0;
+			int status = buf.get();
+			byte[] witness = getBytes(buf, filename);
+
+			int nclauses = buf.getInt();
+			int total = buf.getInt();
+			if (nclauses < 0 || total < 0 || ((long)nclauses + total) * 4 > buf.remaining())
+				throw new FormatException(filename, "truncated");
+			int[] lengths = new int[nclauses];
+			buf.asIntBuffer().get(lengths);
+			buf.position(buf.position() + 4 * nclauses);
+			int[] lits = new int[total];
+			buf.asIntBuffer().get(lits);
+			buf.position(buf.position() + 4 * total);
+			int offset = 0;
+			for (int len : lengths) {
+				if (len < 0 || offset + len > total)
+					throw new FormatException(filename, "bad clause length");
+				int[] clause = Arrays.copyOfRange(lits, offset, offset + len);
+				offset += len;
+				for (int literal : clause)
+					if (literal == 0 || CDCLSolver.var(literal) > nlits)
+						throw new FormatException(filename, "literal " + literal + " out of range");
+				kb.addLoadedClause(clause);
+			}
+
+			int naxioms = buf.getInt();
+			for (int i = 0; i < naxioms; i++)
+				axioms.add(getString(buf, filename));
+
+			kb._bPGClauses = pg;
+			kb._nKbStatus = status;
+			kb._kbWitness = witness;
+		} catch (BufferUnderflowException e) {
+			throw new FormatException(filename, "truncated");
+		} finally {
+			raf.close();
+		}
+	}
+
+	public static void putBytes(MappedByteBuffer buf, byte[] bytes) {
+		buf.putInt(bytes.length);
+		buf.put(bytes);
+	}
+
+	public static byte[] getBytes(MappedByteBuffer buf, String filename) throws IOException {
+		int len = buf.getInt();
+		if (len < 0 || len > buf.remaining())
+			throw new FormatException(filename, "truncated");
+		byte[] bytes = new byte[len];
+		buf.get(bytes);
+		return bytes;
+	}
+
+	public static String getString(MappedByteBuffer buf, String filename) throws IOException {
+		return new String(getBytes(buf, filename), StandardCharsets.UTF_8);
+	}
+}
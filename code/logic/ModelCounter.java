@@ -0,0 +1,280 @@
+package logic;
+import java.math.BigInteger;
+import java.util.*;
+
+// An exact model counter (#SAT) for clause sets given as arrays of DIMACS
+// literals.  Like DPLL it branches on a var and propagates units, but
+// both branches are counted, and after every step the remaining clauses
+// are split into connected components (sharing no vars) whose counts
+// are multiplied.  Component counts are cached by their canonical clause
+// set, so identical subproblems reached along different branches are
+// only counted once (see the Cachet and sharpSAT papers).
+public class ModelCounter {
+
+	// Cache of component -> number of models over the component's vars
+	public HashMap<ComponentKey, BigInteger> _hmCache;
+	public long _nCacheHits;
+	public long _nDecisions;
+
+	// Per-var scratch state, indexed by var (allocated by count()): the
+	// assignment made by simplify() and the vars it assigned, stamps 
+	// marking the vars seen by the current pass, and per-var counts or 
+	// union-find parents
+	public byte[] _value;
+	public int[]  _trail;
+	public int    _nFixed;
+	public int[]  _stamp;
+	public int    _nStamp;
+	public int[]  _scratch;
+
+	public ModelCounter() {
+		_hmCache = new HashMap<ComponentKey, BigInteger>();
+		_nCacheHits = 0;
+		_nDecisions = 0;
+	}
+
+	// Counts the models of clauses over a domain of nvars vars that
+	// includes all vars of the clauses (every var of the domain that
+	// occurs in no clause doubles the count)
+	public BigInteger count(List<int[]> clauses, int nvars) {
+		int max_var = 0;
+		for (int[] clause : clauses)
+			for (int l : clause)
+				max_var = Math.max(max_var, CDCLSolver.var(l));
+		_value = new byte[max_var + 1];
+		_trail = new int[max_var + 1];
+		_stamp = new int[max_var + 1];
+		_nStamp = 0;
+		_scratch = new int[max_var + 1];
+
+		ArrayList<int[]> simplified = simplify(clauses, 0);
+		if (simplified == null)
+			return BigInteger.ZERO;
+		int free = nvars - _nFixed - countVars(simplified);
+		return countComponents(simplified).shiftLeft(free);
+	}
+
+	// Counts the models of a clause set over the vars occurring in it by
+	// multiplying the counts of its connected components
+	public BigInteger countComponents(ArrayList<int[]> clauses) {
+		BigInteger total = BigInteger.ONE;
+		for (ArrayList<int[]> component : getComponents(clauses)) {
+			total = total.multiply(countComponent(component));
+			if (total.signum() == 0)
+				break;
+		}
+		return total;
+	}
+
+	// Counts a connected component over its vars, using the cache
+	public BigInteger countComponent(ArrayList<int[]> clauses) {
+		ComponentKey key = new ComponentKey(clauses);
+		BigInteger cached = _hmCache.get(key);
+		if (cached != null) {
+			++_nCacheHits;
+			return cached;
+		}
+
+		int nvars = countVars(clauses);
+		int var = chooseBranchVar(clauses);
+		BigInteger total = BigInteger.ZERO;
+		for (int literal : new int[] { var, -var }) {
+			++_nDecisions;
+			ArrayList<int[]> simplified = simplify(clauses, literal);
+			if (simplified == null)
+				continue; // Conflict
+			int free = nvars - _nFixed - countVars(simplified);
+			total = total.add(countComponents(simplified).shiftLeft(free));
+		}
+		_hmCache.put(key, total);
+		return total;
+	}
+
+	// Assigns literal (if not 0) and propagates unit clauses, returning
+	// the remaining clauses with false literals removed, or null on a
+	// conflict.  _nFixed is set to the number of vars assigned; the
+	// assignment itself is undone before returning, as the remaining
+	// clauses no longer mention those vars.  Clauses that lose no 
+	// literal are reused rather than copied.
+	public ArrayList<int[]> simplify(List<int[]> clauses, int literal) {
+		_nFixed = 0;
+		if (literal != 0)
+			assign(literal);
+
+		List<int[]> cur = clauses;
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			ArrayList<int[]> next = new ArrayList<int[]>(cur.size());
+			for (int[] clause : cur) {
+				int len = 0;
+				int last = 0;
+				boolean sat = false;
+				for (int l : clause) {
+					int value = valueOf(l);
+					if (value == SimpleDPLL.VAL_TRUE) {
+						sat = true;
+						break;
+					} else if (value == SimpleDPLL.VAL_UNASSIGNED) {
+						++len;
+						last = l;
+					}
+				}
+				if (sat)
+					continue;
+				if (len == 0) {
+					unassign();
+					return null;
+				}
+				if (len == 1) {
+					// A new unit: assign it and simplify again
+					assign(last);
+					changed = true;
+					continue;
+				}
+				if (len == clause.length) {
+					next.add(clause);
+					continue;
+				}
+				int[] reduced = new int[len];
+				len = 0;
+				for (int l : clause)
+					if (valueOf(l) == SimpleDPLL.VAL_UNASSIGNED)
+						reduced[len++] = l;
+				next.add(reduced);
+			}
+			cur = next;
+		}
+		unassign();
+		return (ArrayList<int[]>)cur;
+	}
+
+	public int valueOf(int literal) {
+		return literal > 0 ? _value[literal] : -_value[-literal];
+	}
+
+	public void assign(int literal) {
+		int var = CDCLSolver.var(literal);
+		_value[var] = literal > 0 ? SimpleDPLL.VAL_TRUE : SimpleDPLL.VAL_FALSE;
+		_trail[_nFixed++] = var;
+	}
+
+	// Undoes the assignments of the last simplify()
+	public void unassign() {
+		for (int i = 0; i < _nFixed; i++)
+			_value[_trail[i]] = SimpleDPLL.VAL_UNASSIGNED;
+	}
+
+	// Splits a clause set into groups of clauses that share vars
+	// (union-find over the vars of each clause, in _scratch)
+	public ArrayList<ArrayList<int[]>> getComponents(ArrayList<int[]> clauses) {
+		++_nStamp;
+		for (int[] clause : clauses) {
+			int root = find(CDCLSolver.var(clause[0]));
+			for (int k = 1; k < clause.length; k++) {
+				int other = find(CDCLSolver.var(clause[k]));
+				if (other != root)
+					_scratch[other] = root;
+			}
+		}
+
+		// Roots are then numbered -1, -2, ... by their component 
+		int[] roots = new int[clauses.size()];
+		for (int i = 0; i < roots.length; i++)
+			roots[i] = find(CDCLSolver.var(clauses.get(i)[0]));
+		ArrayList<ArrayList<int[]>> components = new ArrayList<ArrayList<int[]>>();
+		for (int i = 0; i < roots.length; i++) {
+			int root = roots[i];
+			if (_scratch[root] == root) {
+				_scratch[root] = -(components.size() + 1);
+				components.add(new ArrayList<int[]>());
+			}
+			components.get(-_scratch[root] - 1).add(clauses.get(i));
+		}
+		return components;
+	}
+
+	// The union-find root of var (a new singleton set if var was not
+	// seen yet in this pass), halving the path on the way
+	public int find(int var) {
+		if (_stamp[var] != _nStamp) {
+			_stamp[var] = _nStamp;
+			_scratch[var] = var;
+			return var;
+		}
+		while (_scratch[var] != var) {
+			_scratch[var] = _scratch[_scratch[var]];
+			var = _scratch[var];
+		}
+		return var;
+	}
+
+	// Number of distinct vars in clauses
+	public int countVars(List<int[]> clauses) {
+		++_nStamp;
+		int count = 0;
+		for (int[] clause : clauses)
+			for (int l : clause) {
+				int var = CDCLSolver.var(l);
+				if (_stamp[var] != _nStamp) {
+					_stamp[var] = _nStamp;
+					++count;
+				}
+			}
+		return count;
+	}
+
+	// Branch on the var occurring in the most clauses
+	public int chooseBranchVar(List<int[]> clauses) {
+		++_nStamp;
+		int best = 0, best_count = -1;
+		for (int[] clause : clauses)
+			for (int l : clause) {
+				int var = CDCLSolver.var(l);
+				if (_stamp[var] != _nStamp) {
+					_stamp[var] = _nStamp;
+					_scratch[var] = 0;
+				}
+				int count = ++_scratch[var];
+				if (count > best_count) {
+					best = var;
+					best_count = count;
+				}
+			}
+		return best;
+	}
+
+	// A canonical, hashable form of a component: its clauses with sorted
+	// literals, sorted lexicographically
+	public static class ComponentKey {
+		public int[][] _clauses;
+		public int _nHash;
+
+		public ComponentKey(List<int[]> clauses) {
+			_clauses = new int[clauses.size()][];
+			for (int i = 0; i < _clauses.length; i++) {
+				_clauses[i] = clauses.get(i).clone();
+				Arrays.sort(_clauses[i]);
+			}
+			Arrays.sort(_clauses, new Comparator<int[]>() {
+				public int compare(int[] a, int[] b) {
+					for (int k = 0; k < a.length && k < b.length; k++)
+						if (a[k] != b[k])
+							return a[k] < b[k] ? -1 : 1;
+					return a.length - b.length;
+				}
+			});
+			_nHash = Arrays.deepHashCode(_clauses);
+		}
+
+		public int hashCode() {
+			return _nHash;
+		}
+
+		public boolean equals(Object o) {
+			return o instanceof ComponentKey &&
+				((ComponentKey)o)._nHash == _nHash &&
+				Arrays.deepEquals(((ComponentKey)o)._clauses, _clauses);
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package logic;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// A cube-and-conquer version of SimpleDPLL: the top _nSplitDepth levels
+// of the dpll() recursion become RecursiveTasks on a ForkJoinPool, where
+// each task owns a copy of the solver (the watches and clause literals
+// are reordered during propagation, so nothing mutable is shared).
+// Below the split depth a task runs the sequential dpll().  As soon as
+// any branch finds a model the shared stop flag makes all other tasks
+// unwind, since the clauses are then known to be satisfiable.
+public class ParallelDPLL extends SimpleDPLL {
+
+	public ForkJoinPool _pool;
+	public int _nSplitDepth;
+	public AtomicBoolean _abFound; // Set once any branch found a model
+
+	public ParallelDPLL() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	public ParallelDPLL(ForkJoinPool pool) {
+		super();
+		_pool = pool;
+		// A few more cubes than threads so work stealing can balance
+		// branches of very different sizes
+		_nSplitDepth = 32 - Integer.numberOfLeadingZeros(pool.getParallelism()) + 3;
+	}
+
+	// The main entry point to the sat solver... returns true if
+	// clauses are unsatisfiable.
+	public boolean unsat() {
+		_nDepth = 0;
+		_nMaxDepth = 0;
+		for (int var = 1; var <= _nVars; var++)
+			_assign[var] = VAL_UNASSIGNED;
+		_nTrailSize = 0;
+		_nQueueHead = 0;
+		_nLevel = 0;
+		_nSatHead = 0;
+		_bInterrupted = false;
+		_model = null;
+		initHeuristic();
+		if (initWatches() || propagate())
+			return true;
+
+		_abFound = new AtomicBoolean(false);
+		_abStop = _abFound; // A model anywhere stops every branch
+		boolean sat = _pool.invoke(new CubeTask(copy(), 0));
+		_abStop = null;
+		return !sat;
+	}
+
+	// Searches below the current assignment of its solver copy: splits
+	// on the next branch var into two subtasks until _nSplitDepth is
+	// reached, then conquers the cube sequentially.  Returns true if a
+	// model was found in this subtree (false also for cancelled tasks).
+	public class CubeTask extends RecursiveTask<Boolean> {
+		private static final long serialVersionUID = 1L;
+
+		public SimpleDPLL _solver;
+		public int _nCubeDepth;
+
+		public CubeTask(SimpleDPLL solver, int depth) {
+			_solver = solver;
+			_nCubeDepth = depth;
+		}
+
+		public Boolean compute() {
+			if (_solver.stopRequested())
+				return false;
+			int var = _solver.allSatisfied() ? -1 : _solver.chooseBranchVar();
+			if (var < 0) // Every clause satisfied without conflict
+				return found(_solver.getModel());
+			boolean first = _solver.choosePhase(var) > 0;
+
+			if (_nCubeDepth >= _nSplitDepth) {
+				// Conquer: plain DPLL on this cube
+				boolean unsat = _solver.dpll(var, first) && _solver.dpll(var, !first);
+				return !unsat && found(_solver._model);
+			}
+
+			// Split: a task for each value that survives propagation
+			CubeTask[] tasks = new CubeTask[2];
+			int num_tasks = 0;
+			for (boolean value : new boolean[] { first, !first }) {
+				SimpleDPLL child = _solver.copy();
+				child.newDecisionLevel();
+				child.enqueue(value ? var : -var);
+				if (!child.propagate())
+					tasks[num_tasks++] = new CubeTask(child, _nCubeDepth + 1);
+			}
+			if (num_tasks == 2) {
+				invokeAll(tasks[0], tasks[1]);
+				return tasks[0].join() || tasks[1].join();
+			}
+			return num_tasks == 1 && tasks[0].compute();
+		}
+
+		// Records the first model found and stops all other branches
+		public boolean found(byte[] model) {
+			if (_abFound.compareAndSet(false, true))
+				_model = model;
+			return true;
+		}
+	}
+}
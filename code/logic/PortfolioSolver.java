@@ -0,0 +1,144 @@
+package logic;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Races several differently configured CDCL solvers on the same clauses,
+// one per thread, and takes the answer of the first to finish; the
+// others are then cancelled through a shared stop flag.  Workers differ
+// in initial polarity and random seed, and in branching heuristic and
+// restart policy unless the kb sets those, so one of them is often much
+// luckier than a single solver.  Optionally, short learned clauses are
+// shared between the workers.
+public class PortfolioSolver {
+
+	// Learned clauses up to this length are shared between workers
+	public static final int SHARE_MAX_LENGTH = 3;
+
+	public int _nWorkers;
+	public boolean _bShareClauses;
+	public long _nSeed;
+	public ExecutorService _pool;
+
+	// The worker that answered the last call and the model it found
+	// (if satisfiable)
+	public int _nWinner;
+	public byte[] _model;
+
+	public PortfolioSolver(int workers, boolean share_clauses) {
+		_nWorkers = workers;
+		_bShareClauses = share_clauses;
+		_nSeed = 1;
+		_nWinner = -1;
+		_pool = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "portfolio-worker");
+				t.setDaemon(true); // Never keeps the shell alive
+				return t;
+			}
+		});
+	}
+
+	// Creates worker i: worker 0 is the default CDCL configuration, the
+	// others cycle through restart policies, heuristics and polarities.
+	// The caller then applies the settings it fixes (for the kb, see
+	// PropKbCNF.configureSolver()), which override this diversification.
+	public CDCLSolver newWorker(int i) {
+		CDCLSolver solver = new CDCLSolver();
+		solver._nWorkerID = i;
+		solver._nRestartPolicy = new int[] { CDCLSolver.RESTART_LUBY,
+				CDCLSolver.RESTART_GLUCOSE, CDCLSolver.RESTART_NONE }[i % 3];
+		if (i % 4 == 3)
+			solver._nBranchHeuristic = SimpleDPLL.BRANCH_MOST_CONSTRAINED;
+		solver._nPolarity = i == 0 ? SimpleDPLL.POLARITY_TRUE :
+			(i == 1 ? SimpleDPLL.POLARITY_FALSE : SimpleDPLL.POLARITY_RANDOM);
+		if (i > 0)
+			solver._rand = new Random(_nSeed + i);
+		return solver;
+	}
+
+	// Solves the clause set loaded into every worker (see newWorker())
+	// and returns true if it is unsatisfiable.  Blocks until every worker
+	// has stopped, so none keeps running into the next call: after a 
+	// worker fails or this thread is interrupted, the others are stopped
+	// and their results drained before the failure is passed on.
+	public boolean unsat(final CDCLSolver[] workers) {
+		final AtomicBoolean stop = new AtomicBoolean(false);
+		ClauseExchange exchange = _bShareClauses ? new ClauseExchange() : null;
+		ExecutorCompletionService<Integer> race = new ExecutorCompletionService<Integer>(_pool);
+		final boolean[] results = new boolean[workers.length];
+		for (int i = 0; i < workers.length; i++) {
+			final int worker = i;
+			workers[i]._abStop = stop;
+			workers[i]._exchange = exchange;
+			race.submit(new Callable<Integer>() {
+				public Integer call() {
+					results[worker] = workers[worker].unsat();
+					return worker;
+				}
+			});
+		}
+
+		_nWinner = -1;
+		Throwable failure = null;
+		boolean interrupted = false;
+		for (int done = 0; done < workers.length; ) {
+			try {
+				Future<Integer> result = race.take();
+				++done;
+				int worker = result.get();
+				if (_nWinner < 0 && !workers[worker]._bInterrupted) {
+					_nWinner = worker;
+					stop.set(true); // Cancel the losers
+				}
+			} catch (InterruptedException e) {
+				interrupted = true; // Still wait for the stopped workers
+				stop.set(true);
+			} catch (ExecutionException e) {
+				if (failure == null)
+					failure = e.getCause();
+				stop.set(true);
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		if (failure != null)
+			throw new RuntimeException(failure);
+		if (_nWinner < 0)
+			throw new RuntimeException("Portfolio: no worker finished");
+		_model = workers[_nWinner]._model;
+		return results[_nWinner];
+	}
+
+	public void shutdown() {
+		_pool.shutdownNow();
+	}
+
+	// A shared, append-only list of learned clauses tagged with the
+	// worker that learned them; each worker remembers how far it read
+	public static class ClauseExchange {
+		public ArrayList<int[]> _alClauses;
+		public ArrayList<Integer> _alSources;
+		public volatile int _nSize; // Lets readers skip fetch() when nothing is new
+
+		public ClauseExchange() {
+			_alClauses = new ArrayList<int[]>();
+			_alSources = new ArrayList<Integer>();
+		}
+
+		public synchronized void publish(int source, int[] clause) {
+			_alClauses.add(clause.clone());
+			_alSources.add(source);
+			_nSize = _alClauses.size();
+		}
+
+		// Adds the clauses from position 'from' on that other workers
+		// published to out and returns the new read position
+		public synchronized int fetch(int reader, int from, ArrayList<int[]> out) {
+			for (int i = from; i < _alClauses.size(); i++)
+				if (_alSources.get(i) != reader)
+					out.add(_alClauses.get(i));
+			return _alClauses.size();
+		}
+	}
+}
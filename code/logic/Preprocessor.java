@@ -0,0 +1,605 @@
+package logic;
+import java.util.*;
+
+// Simplifies a clause set (of DIMACS literal arrays) before it is handed
+// to a solver, preserving satisfiability (see the SatELite paper):
+//
+//   - unit propagation at the root
+//   - equivalent literal substitution: literals on a cycle of binary
+//     clauses (e.g., from <=> axioms) are replaced by one representative
+//   - subsumption and self-subsuming resolution (strengthening)
+//   - bounded variable elimination (BVE) by clause distribution, which
+//     also removes pure literals
+//   - failed literal probing: a literal whose propagation conflicts is
+//     false
+//
+// Every substitution and elimination is recorded so that reconstruct()
+// can extend a model of the simplified clauses to the original ones.
+public class Preprocessor {
+
+	// BVE only eliminates vars with at most this many occurrences per
+	// polarity, and only if no resolvent is longer than BVE_MAX_LENGTH
+	public static final int BVE_MAX_OCCURRENCES = 10;
+	public static final int BVE_MAX_LENGTH      = 16;
+
+	// Vars probed per round, and rounds of the whole pipeline
+	public static final int PROBE_LIMIT = 2000;
+	public static final int MAX_ROUNDS  = 4;
+
+	public int _nVars;
+
+	// Clauses by id (null once removed), and for each literal (indexed by
+	// SimpleDPLL.litIndex()) the ids of clauses that contained it when
+	// added; entries for removed or strengthened clauses are skipped and
+	// dropped lazily
+	public ArrayList<int[]> _alClauses;
+	public ArrayList<Integer>[] _occurs;
+
+	// Root assignment (SimpleDPLL.VAL_*) and units not yet propagated
+	public byte[] _value;
+	public ArrayList<Integer> _alUnits;
+	public boolean _bUnsat;
+
+	// Substitutions and eliminations, in the order they were made
+	public ArrayList<Elimination> _alStack;
+	public boolean[] _removed; // Vars substituted or eliminated
+
+	// Scratch marks for subset tests
+	public int[] _mark;
+	public int   _nStamp;
+
+	// Statistics
+	public int _nUnits;
+	public int _nEquivalent;
+	public int _nSubsumed;
+	public int _nStrengthened;
+	public int _nEliminated;
+	public int _nFailed;
+
+	// A var that was substituted by _nLiteral, or eliminated together
+	// with its clauses (_nLiteral == 0)
+	public static class Elimination {
+		public int _nVar;
+		public int _nLiteral;
+		public ArrayList<int[]> _alClauses;
+
+		public Elimination(int var, int literal, ArrayList<int[]> clauses) {
+			_nVar = var;
+			_nLiteral = literal;
+			_alClauses = clauses;
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public Preprocessor(int nvars) {
+		_nVars = nvars;
+		_alClauses = new ArrayList<int[]>();
+		_occurs = new ArrayList[(nvars + 1) << 1];
+		for (int i = 0; i < _occurs.length; i++)
+			_occurs[i] = new ArrayList<Integer>();
+		_value = new byte[nvars + 1];
+		_alUnits = new ArrayList<Integer>();
+		_bUnsat = false;
+		_alStack = new ArrayList<Elimination>();
+		_removed = new boolean[nvars + 1];
+		_mark = new int[(nvars + 1) << 1];
+		_nStamp = 0;
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+	// Clause store
+	////////////////////////////////////////////////////////////////////////////
+
+	// Adds a clause, dropping duplicate and root-false literals; clauses
+	// that are tautologies or true at the root are skipped
+	public void addClause(int[] lits) {
+		int[] clause = new int[lits.length];
+		int len = 0;
+		for (int literal : lits) {
+			int value = valueOf(literal);
+			if (value == SimpleDPLL.VAL_TRUE)
+				return;
+			if (value == SimpleDPLL.VAL_FALSE)
+				continue;
+			boolean duplicate = false;
+			for (int k = 0; k < len; k++) {
+				if (clause[k] == -literal)
+					return; // Tautology
+				duplicate |= clause[k] == literal;
+			}
+			if (!duplicate)
+				clause[len++] = literal;
+		}
+		if (len == 0)
+			_bUnsat = true;
+		else if (len == 1)
+			assign(clause[0]);
+		else {
+			clause = Arrays.copyOf(clause, len);
+			int id = _alClauses.size();
+			_alClauses.add(clause);
+			for (int literal : clause)
+				_occurs[SimpleDPLL.litIndex(literal)].add(id);
+		}
+	}
+
+	public void removeClause(int id) {
+		_alClauses.set(id, null);
+	}
+
+	// Removes literal from clause id (a new array, so the old one can
+	// still be held by a caller)
+	public void strengthen(int id, int literal) {
+		int[] clause = _alClauses.get(id);
+		removeClause(id);
+		int[] strengthened = new int[clause.length - 1];
+		int len = 0;
+		for (int l : clause)
+			if (l != literal)
+				strengthened[len++] = l;
+		addClause(strengthened);
+	}
+
+	public static boolean contains(int[] clause, int literal) {
+		for (int l : clause)
+			if (l == literal)
+				return true;
+		return false;
+	}
+
+	// Ids of the live clauses containing literal (compacts its list)
+	public ArrayList<Integer> occurrences(int literal) {
+		ArrayList<Integer> list = _occurs[SimpleDPLL.litIndex(literal)];
+		int kept = 0;
+		for (int i = 0; i < list.size(); i++) {
+			int id = list.get(i);
+			int[] clause = _alClauses.get(id);
+			if (clause != null && contains(clause, literal))
+				list.set(kept++, id);
+		}
+		while (list.size() > kept)
+			list.remove(list.size() - 1);
+		return list;
+	}
+
+	public int valueOf(int literal) {
+		return literal > 0 ? _value[literal] : -_value[-literal];
+	}
+
+	// The remaining clauses (root units are not included; see
+	// reconstruct())
+	public ArrayList<int[]> getClauses() {
+		ArrayList<int[]> clauses = new ArrayList<int[]>();
+		for (int[] clause : _alClauses)
+			if (clause != null)
+				clauses.add(clause);
+		return clauses;
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+	// Units
+	////////////////////////////////////////////////////////////////////////////
+
+	public void assign(int literal) {
+		int value = valueOf(literal);
+		if (value == SimpleDPLL.VAL_FALSE)
+			_bUnsat = true;
+		else if (value == SimpleDPLL.VAL_UNASSIGNED) {
+			_value[CDCLSolver.var(literal)] = literal > 0 ? SimpleDPLL.VAL_TRUE : SimpleDPLL.VAL_FALSE;
+			_alUnits.add(literal);
+			++_nUnits;
+		}
+	}
+
+	// Removes the clauses satisfied by the root units and the false
+	// literals from the others, until no new unit is found
+	public void propagateUnits() {
+		for (int i = 0; i < _alUnits.size() && !_bUnsat; i++) {
+			int literal = _alUnits.get(i);
+			for (int id : new ArrayList<Integer>(occurrences(literal)))
+				removeClause(id);
+			for (int id : new ArrayList<Integer>(occurrences(-literal)))
+				if (_alClauses.get(id) != null)
+					strengthen(id, -literal);
+		}
+		_alUnits.clear();
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+	// Main pipeline
+	////////////////////////////////////////////////////////////////////////////
+
+	// Runs all techniques until nothing changes (or MAX_ROUNDS); returns
+	// false if the clauses were found to be UNSAT
+	public boolean preprocess() {
+		for (int round = 0; round < MAX_ROUNDS && !_bUnsat; round++) {
+			int size = countLiterals();
+			propagateUnits();
+			if (!_bUnsat) substituteEquivalences();
+			if (!_bUnsat) propagateUnits();
+			if (!_bUnsat) subsume();
+			if (!_bUnsat) propagateUnits();
+			if (!_bUnsat) eliminateVars();
+			if (!_bUnsat) propagateUnits();
+			if (!_bUnsat) probeFailedLiterals();
+			if (!_bUnsat) propagateUnits();
+			if (countLiterals() == size)
+				break;
+		}
+		return !_bUnsat;
+	}
+
+	public int countLiterals() {
+		int count = _nUnits;
+		for (int[] clause : _alClauses)
+			if (clause != null)
+				count += clause.length + 1;
+		return count;
+	}
+
+	// Finds the strongly connected components of the binary implication
+	// graph (clause a | b gives ~a -> b and ~b -> a) with an iterative
+	// Tarjan search.  All literals of a component are equivalent, so each
+	// is replaced by the one with the smallest var; a component holding
+	// both x and ~x makes the clauses UNSAT.
+	public void substituteEquivalences() {
+		int nodes = (_nVars + 1) << 1;
+		int[][] succ = new int[nodes][];
+		int[] succ_count = new int[nodes];
+		for (int[] clause : _alClauses) {
+			if (clause == null || clause.length != 2)
+				continue;
+			succ_count[SimpleDPLL.litIndex(-clause[0])]++;
+			succ_count[SimpleDPLL.litIndex(-clause[1])]++;
+		}
+		for (int i = 0; i < nodes; i++)
+			succ[i] = new int[succ_count[i]];
+		Arrays.fill(succ_count, 0);
+		for (int[] clause : _alClauses) {
+			if (clause == null || clause.length != 2)
+				continue;
+			int a = SimpleDPLL.litIndex(-clause[0]);
+			succ[a][succ_count[a]++] = SimpleDPLL.litIndex(clause[1]);
+			int b = SimpleDPLL.litIndex(-clause[1]);
+			succ[b][succ_count[b]++] = SimpleDPLL.litIndex(clause[0]);
+		}
+
+		int[] index = new int[nodes];
+		int[] low = new int[nodes];
+		boolean[] on_stack = new boolean[nodes];
+		Arrays.fill(index, -1);
+		int[] stack = new int[nodes];
+		int stack_size = 0;
+		int[] call = new int[nodes];     // DFS path
+		int[] next_edge = new int[nodes];
+		int counter = 0;
+		int[] subst = new int[_nVars + 1]; // Var -> replacing literal
+
+		for (int root = 2; root < nodes; root++) {
+			if (index[root] >= 0 || succ[root].length == 0)
+				continue;
+			int depth = 0;
+			call[depth++] = root;
+			index[root] = low[root] = counter++;
+			stack[stack_size++] = root;
+			on_stack[root] = true;
+			next_edge[root] = 0;
+			while (depth > 0) {
+				int v = call[depth - 1];
+				if (next_edge[v] < succ[v].length) {
+					int w = succ[v][next_edge[v]++];
+					if (index[w] < 0) {
+						index[w] = low[w] = counter++;
+						stack[stack_size++] = w;
+						on_stack[w] = true;
+						next_edge[w] = 0;
+						call[depth++] = w;
+					} else if (on_stack[w])
+						low[v] = Math.min(low[v], index[w]);
+					continue;
+				}
+				--depth;
+				if (depth > 0)
+					low[call[depth - 1]] = Math.min(low[call[depth - 1]], low[v]);
+				if (low[v] != index[v])
+					continue;
+
+				// v is the root of a component: pop it and pick the
+				// literal with the smallest var as representative
+				int start = stack_size;
+				do {
+					on_stack[stack[--start]] = false;
+				} while (stack[start] != v);
+				int repr = 0;
+				for (int k = start; k < stack_size; k++) {
+					int literal = toLiteral(stack[k]);
+					if (repr == 0 || CDCLSolver.var(literal) < CDCLSolver.var(repr))
+						repr = literal;
+				}
+				for (int k = start; k < stack_size; k++) {
+					int literal = toLiteral(stack[k]);
+					int var = CDCLSolver.var(literal);
+					if (literal == -repr) {
+						_bUnsat = true;
+						return;
+					}
+					if (var != CDCLSolver.var(repr))
+						subst[var] = literal > 0 ? repr : -repr;
+				}
+				stack_size = start;
+			}
+		}
+
+		// Rewrite the clauses with a substituted var
+		boolean[] rewrite = new boolean[_alClauses.size()];
+		for (int var = 1; var <= _nVars; var++) {
+			if (subst[var] == 0)
+				continue;
+			for (int id : occurrences(var))
+				rewrite[id] = true;
+			for (int id : occurrences(-var))
+				rewrite[id] = true;
+			_alStack.add(new Elimination(var, subst[var], null));
+			_removed[var] = true;
+			++_nEquivalent;
+		}
+		for (int id = 0; id < rewrite.length; id++) {
+			if (!rewrite[id] || _alClauses.get(id) == null)
+				continue;
+			int[] clause = _alClauses.get(id).clone();
+			removeClause(id);
+			for (int k = 0; k < clause.length; k++) {
+				int var = CDCLSolver.var(clause[k]);
+				if (subst[var] != 0)
+					clause[k] = clause[k] > 0 ? subst[var] : -subst[var];
+			}
+			addClause(clause);
+		}
+	}
+
+	public static int toLiteral(int lit_index) {
+		return (lit_index & 1) == 0 ? (lit_index >> 1) : -(lit_index >> 1);
+	}
+
+	// Backward subsumption and self-subsuming resolution: each clause C
+	// removes the clauses D it is a subset of, and if C with one literal
+	// l negated is a subset of D, then ~l is removed from D
+	public void subsume() {
+		Integer[] order = new Integer[_alClauses.size()];
+		for (int id = 0; id < order.length; id++)
+			order[id] = id;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				int[] ca = _alClauses.get(a), cb = _alClauses.get(b);
+				return (ca == null ? 0 : ca.length) - (cb == null ? 0 : cb.length);
+			}
+		});
+
+		for (int id : order) {
+			int[] clause = _alClauses.get(id);
+			if (clause == null)
+				continue;
+			++_nStamp;
+			for (int literal : clause)
+				_mark[SimpleDPLL.litIndex(literal)] = _nStamp;
+
+			// Subsumption: scan the literal with the fewest occurrences
+			int best = clause[0];
+			for (int literal : clause)
+				if (occurrences(literal).size() < occurrences(best).size())
+					best = literal;
+			for (int other : new ArrayList<Integer>(occurrences(best)))
+				if (other != id && isSubset(clause, _alClauses.get(other))) {
+					removeClause(other);
+					++_nSubsumed;
+				}
+
+			// Strengthening: C = l | R and D = ~l | R | S give R | S
+			for (int literal : clause) {
+				for (int other : new ArrayList<Integer>(occurrences(-literal))) {
+					int[] target = _alClauses.get(other);
+					if (target == null || target.length < clause.length)
+						continue;
+					_mark[SimpleDPLL.litIndex(literal)] = 0;
+					_mark[SimpleDPLL.litIndex(-literal)] = _nStamp;
+					boolean subset = isMarkedSubset(clause.length, target);
+					_mark[SimpleDPLL.litIndex(-literal)] = 0;
+					_mark[SimpleDPLL.litIndex(literal)] = _nStamp;
+					if (subset) {
+						strengthen(other, -literal);
+						++_nStrengthened;
+						if (_bUnsat)
+							return;
+					}
+				}
+			}
+		}
+	}
+
+	// Is clause (whose literals are marked with _nStamp) a subset of d?
+	public boolean isSubset(int[] clause, int[] d) {
+		return d != null && d.length >= clause.length && isMarkedSubset(clause.length, d);
+	}
+
+	// Do exactly 'count' literals of d carry the current mark?
+	public boolean isMarkedSubset(int count, int[] d) {
+		int found = 0;
+		for (int literal : d)
+			if (_mark[SimpleDPLL.litIndex(literal)] == _nStamp)
+				++found;
+		return found == count;
+	}
+
+	// Bounded variable elimination: replaces the clauses of a var by all
+	// their non-tautological resolvents on it when there are no more
+	// resolvents than clauses (a var occurring in one polarity only is
+	// pure and all its clauses are simply removed)
+	public void eliminateVars() {
+		for (int var = 1; var <= _nVars && !_bUnsat; var++) {
+			if (_removed[var] || _value[var] != SimpleDPLL.VAL_UNASSIGNED)
+				continue;
+			ArrayList<Integer> pos = occurrences(var);
+			ArrayList<Integer> neg = occurrences(-var);
+			if (pos.isEmpty() && neg.isEmpty())
+				continue;
+			if (pos.size() > BVE_MAX_OCCURRENCES || neg.size() > BVE_MAX_OCCURRENCES)
+				continue;
+
+			ArrayList<int[]> resolvents = new ArrayList<int[]>();
+			boolean ok = true;
+			for (int p = 0; p < pos.size() && ok; p++)
+				for (int n = 0; n < neg.size() && ok; n++) {
+					int[] resolvent = resolve(_alClauses.get(pos.get(p)), _alClauses.get(neg.get(n)), var);
+					if (resolvent == null)
+						continue; // Tautology
+					resolvents.add(resolvent);
+					ok = resolvents.size() <= pos.size() + neg.size() &&
+						resolvent.length <= BVE_MAX_LENGTH;
+				}
+			if (!ok)
+				continue;
+
+			ArrayList<int[]> removed = new ArrayList<int[]>();
+			for (int id : new ArrayList<Integer>(pos)) {
+				removed.add(_alClauses.get(id));
+				removeClause(id);
+			}
+			for (int id : new ArrayList<Integer>(neg)) {
+				removed.add(_alClauses.get(id));
+				removeClause(id);
+			}
+			_alStack.add(new Elimination(var, 0, removed));
+			_removed[var] = true;
+			++_nEliminated;
+			for (int[] resolvent : resolvents)
+				addClause(resolvent);
+			propagateUnits();
+		}
+	}
+
+	// The resolvent of a (containing var) and b (containing -var), or
+	// null if it is a tautology
+	public static int[] resolve(int[] a, int[] b, int var) {
+		int[] resolvent = new int[a.length + b.length - 2];
+		int len = 0;
+		for (int literal : a)
+			if (literal != var)
+				resolvent[len++] = literal;
+		for (int literal : b) {
+			if (literal == -var)
+				continue;
+			boolean duplicate = false;
+			for (int k = 0; k < len; k++) {
+				if (resolvent[k] == -literal)
+					return null;
+				duplicate |= resolvent[k] == literal;
+			}
+			if (!duplicate)
+				resolvent[len++] = literal;
+		}
+		return Arrays.copyOf(resolvent, len);
+	}
+
+	// Assigns each phase of (up to PROBE_LIMIT) vars in turn and unit
+	// propagates; if that conflicts, the opposite literal is a unit
+	public void probeFailedLiterals() {
+		byte[] probe = new byte[_nVars + 1];
+		int[] trail = new int[_nVars + 1];
+		int probed = 0;
+		for (int var = 1; var <= _nVars && probed < PROBE_LIMIT && !_bUnsat; var++) {
+			if (_removed[var] || _value[var] != SimpleDPLL.VAL_UNASSIGNED)
+				continue;
+			if (occurrences(var).isEmpty() && occurrences(-var).isEmpty())
+				continue;
+			++probed;
+			for (int literal : new int[] { var, -var }) {
+				if (_value[var] != SimpleDPLL.VAL_UNASSIGNED)
+					break;
+				if (probeConflicts(literal, probe, trail)) {
+					++_nFailed;
+					assign(-literal);
+					propagateUnits();
+				}
+			}
+		}
+	}
+
+	// Propagates literal on top of the root assignment (in the scratch
+	// assignment probe) and reports whether a clause becomes false
+	public boolean probeConflicts(int literal, byte[] probe, int[] trail) {
+		int size = 0;
+		boolean conflict = false;
+		probe[CDCLSolver.var(literal)] = (byte)(literal > 0 ? 1 : -1);
+		trail[size++] = literal;
+		for (int head = 0; head < size && !conflict; head++) {
+			for (int id : occurrences(-trail[head])) {
+				int[] clause = _alClauses.get(id);
+				int unassigned = 0, last = 0;
+				boolean sat = false;
+				for (int l : clause) {
+					int value = probeValue(l, probe);
+					if (value > 0) {
+						sat = true;
+						break;
+					} else if (value == 0) {
+						++unassigned;
+						last = l;
+					}
+				}
+				if (sat || unassigned > 1)
+					continue;
+				if (unassigned == 0) {
+					conflict = true;
+					break;
+				}
+				probe[CDCLSolver.var(last)] = (byte)(last > 0 ? 1 : -1);
+				trail[size++] = last;
+			}
+		}
+		for (int t = 0; t < size; t++)
+			probe[CDCLSolver.var(trail[t])] = 0;
+		return conflict;
+	}
+
+	public int probeValue(int literal, byte[] probe) {
+		int var = CDCLSolver.var(literal);
+		int value = _value[var] != SimpleDPLL.VAL_UNASSIGNED ? _value[var] : probe[var];
+		return literal > 0 ? value : -value;
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+	// Model reconstruction
+	////////////////////////////////////////////////////////////////////////////
+
+	// Extends a model of getClauses() (indexed by var id) to a model of
+	// the original clauses: root units are set, then the substitutions
+	// and eliminations are undone in reverse order
+	public byte[] reconstruct(byte[] model) {
+		byte[] result = new byte[_nVars + 1];
+		if (model != null)
+			System.arraycopy(model, 0, result, 0, Math.min(model.length, result.length));
+		for (int var = 1; var <= _nVars; var++) {
+			if (_value[var] != SimpleDPLL.VAL_UNASSIGNED)
+				result[var] = _value[var];
+			else if (result[var] == SimpleDPLL.VAL_UNASSIGNED)
+				result[var] = SimpleDPLL.VAL_FALSE; // Free var
+		}
+
+		for (int i = _alStack.size() - 1; i >= 0; i--) {
+			Elimination e = _alStack.get(i);
+			if (e._alClauses == null) {
+				int value = result[CDCLSolver.var(e._nLiteral)];
+				result[e._nVar] = (byte)(e._nLiteral > 0 ? value : -value);
+				continue;
+			}
+			// Make var false unless a clause needs it true
+			result[e._nVar] = SimpleDPLL.VAL_FALSE;
+			for (int[] clause : e._alClauses)
+				if (contains(clause, e._nVar) && !PropKbCNF.satisfies(result, clause)) {
+					result[e._nVar] = SimpleDPLL.VAL_TRUE;
+					break;
+				}
+		}
+		return result;
+	}
+}
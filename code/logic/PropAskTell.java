@@ -2,6 +2,7 @@ package logic;
 import utils.*;
 import java.io.*;
 import java.util.ArrayList;
+import java.util.concurrent.*;
 
 public class PropAskTell {
 	/* Static constants */
@@ -18,17 +19,43 @@ public class PropAskTell {
 	public PrintStream _os;
 	public PropKbCNF _kb;
 	public ArrayList<String> _axioms;
+	public ArrayList<Integer> _axiomMarks; // Number of axioms at each push
 	public long _lStartTime;
+	
+	// Batch mode: consecutive asks are collected in _alPendingAsks and
+	// solved together on _batchPool when the next other command arrives
+	public boolean _bAskBatch;
+	public ArrayList<String> _alPendingAsks;
+	public ExecutorService _batchPool;
 
 	/* Class-defined commands */
 	public int QUIT;
 	public int COMMENT;
 	public int NEW_KB;
 	public int EXPORT_DIMACS;
+	public int SAVE_KB;
+	public int LOAD_KB;
 	public int PROP_TELL;
 	public int PROP_ASK;
+	public int BACKBONE;
+	public int MODELS;
+	public int COUNT_MODELS;
+	public int COMPILE;
+	public int CACHE_STATS;
+	public int PUSH;
+	public int POP;
 	public int SHOW_KB;
 	public int SHOW_CNF;
+	public int SOLVER;
+	public int HEURISTIC;
+	public int RESTARTS;
+	public int PHASE_SAVING;
+	public int CNF_MODE;
+	public int INCREMENTAL;
+	public int PORTFOLIO;
+	public int SHARE_CLAUSES;
+	public int ASK_BATCH;
+	public int PREPROCESS;
 	public int TIMER;
 
 	/**
@@ -59,6 +86,7 @@ public class PropAskTell {
 		_os = os;
 		_ci = new CommandInterface(_is, _os);
 		_axioms = new ArrayList<String>();
+		_axiomMarks = new ArrayList<Integer>();
 
 		// Initialize a set of commands
 		TIMER = _ci.command.addCommand("timer",
@@ -71,19 +99,61 @@ public class PropAskTell {
 				"                              - make a new knowledge base of the given type");
 		EXPORT_DIMACS = _ci.command.addCommand("export-dimacs",
 				" <filename> <query>    - export the current KB and a possible negated query in DIMACS format");
+		SAVE_KB = _ci.command.addCommand("save-kb",
+				" <filename>                  - save the kb to a binary snapshot");
+		LOAD_KB = _ci.command.addCommand("load-kb",
+				" <filename>                  - replace the kb by a saved snapshot");
 		SHOW_KB = _ci.command.addCommand("show-kb",
 				" [ext]                       - display current axioms in kb");
 		SHOW_CNF = _ci.command.addCommand("show-cnf",
 				" {true,false}               - display current axioms in kb");
+		SOLVER = _ci.command.addCommand("solver",
+				" {dpll,cdcl,parallel}         - select the internal SAT solver");
+		HEURISTIC = _ci.command.addCommand("heuristic",
+				" {default,simple,constrained,vsids} - select the branching heuristic");
+		RESTARTS = _ci.command.addCommand("restarts",
+				" {default,none,luby,glucose} - select the cdcl restart policy");
+		PHASE_SAVING = _ci.command.addCommand("phase-saving",
+				" {true,false}           - branch on the last value of a var first");
+		CNF_MODE = _ci.command.addCommand("cnf-mode",
+				" {distribute,tseitin,pg}      - select the CNF conversion for new formulas");
+		INCREMENTAL = _ci.command.addCommand("incremental",
+				" {true,false}            - answer asks with one persistent cdcl solver");
+		PORTFOLIO = _ci.command.addCommand("portfolio",
+				" <n>                       - race n differently configured cdcl solvers per ask (0 = off)");
+		ASK_BATCH = _ci.command.addCommand("ask-batch",
+				" {true,false}              - solve runs of consecutive asks concurrently");
+		SHARE_CLAUSES = _ci.command.addCommand("share-clauses",
+				" {true,false}          - share short learned clauses between portfolio solvers");
+		PREPROCESS = _ci.command.addCommand("preprocess",
+				" {true,false}             - simplify the clauses before each new solver runs");
 		PROP_TELL = _ci.command
 				.addCommand("tell",
 						" <string>                       - tell a propositional statement to the kb");
 		PROP_ASK = _ci.command
 				.addCommand("ask",
 						" <string>                        - query truthhood of propositional string in kb");
+		PUSH = _ci.command.addCommand("push",
+				"                                - open a scope that the matching pop retracts");
+		POP = _ci.command.addCommand("pop",
+				"                                 - retract everything told since the last push");
+		BACKBONE = _ci.command.addCommand("backbone",
+				"                            - list all literals entailed by the kb");
+		MODELS = _ci.command.addCommand("models",
+				" [max]                        - list the models of the kb over the named vars of its clauses");
+		COUNT_MODELS = _ci.command.addCommand("count-models",
+				"                        - count the models of the kb over the vars of its clauses");
+		COMPILE = _ci.command.addCommand("compile",
+				"                             - compile the kb to a BDD that answers asks until the next tell");
+		CACHE_STATS = _ci.command.addCommand("cache-stats",
+				"                         - show query cache hits and misses");
 
 		// Initialize time
 		_lStartTime = 0L;
+		
+		_bAskBatch = false;
+		_alPendingAsks = new ArrayList<String>();
+		_batchPool = null;
 
 		// Initialize the domain
 		_kb = new PropKbCNF(USE_EXTERNAL_SAT_SOLVER);
@@ -103,6 +173,10 @@ public class PropAskTell {
 				_os.println("IO Error: " + e);
 				System.exit(1);
 			}
+			
+			// A run of batched asks ends at the first other command
+			if (_ci.command.type != PROP_ASK && _ci.command.type != COMMENT)
+				flushAsks();
 
 			/***********************************************************
 			 * Command: Quit
@@ -153,7 +227,10 @@ public class PropAskTell {
 				
 				// Obtain the domain title (if provided)
 				_axioms.clear();
+				_axiomMarks.clear();
+				PropKbCNF old_kb = _kb;
 				_kb = new PropKbCNF(external_sat);
+				_kb.copyOptions(old_kb);
 
 				// Print results
 				_os.println("\nCreated new " + (external_sat ? "external inference" : "internal inference") + " Prop KB.");
@@ -168,14 +245,58 @@ public class PropAskTell {
 					String filename = _ci.command.getParam(0);
 					String query    = _ci.command.getParam(1);
 
-					_kb.exportDIMACSQuery(filename, query);
-					_os.println("\nExported DIMACS file to '" + filename + "' with ~query: " + query);
+					try {
+						_kb.exportDIMACSQuery(filename, query);
+						_os.println("\nExported DIMACS file to '" + filename + "' with ~query: " + query);
+					} catch (IOException e) {
+						_os.println("\nError exporting '" + filename + "': " + e);
+					}
 				
 				} else
 					_os.println("\nMust include filename and query as arguments.");
 				
 			}
 
+			/***********************************************************
+			 * Command: Save KB
+			 ***********************************************************/
+			else if (_ci.command.type == SAVE_KB) {
+		
+				if (_ci.command.numParams() >= 1) {
+					String filename = _ci.command.getParam(0);
+					try {
+						KbSnapshot.save(_kb, filename, _axioms);
+						_os.println("\nSaved kb to '" + filename + "' (" + _kb._alKbClauses.size() + " clauses)");
+					} catch (IOException e) {
+						_os.println("\nError saving '" + filename + "': " + e);
+					}
+				} else
+					_os.println("\nMust include filename as argument.");
+			}
+
+			/***********************************************************
+			 * Command: Load KB
+			 ***********************************************************/
+			else if (_ci.command.type == LOAD_KB) {
+		
+				if (_ci.command.numParams() >= 1) {
+					String filename = _ci.command.getParam(0);
+					PropKbCNF new_kb = new PropKbCNF(_kb._bUseExternalReasoner);
+					new_kb.copyOptions(_kb);
+					ArrayList<String> axioms = new ArrayList<String>();
+					try {
+						KbSnapshot.load(new_kb, filename, axioms);
+						_kb = new_kb;
+						_axioms = axioms;
+						_axiomMarks.clear();
+						_os.println("\nLoaded kb from '" + filename + "' (" + _kb._alKbClauses.size() + " clauses)");
+					} catch (IOException e) {
+						_os.println("\nError loading '" + filename + "': " + e);
+					}
+				} else
+					_os.println("\nMust include filename as argument.");
+			}
+
 			/***********************************************************
 			 * Command: Show KB
 			 ***********************************************************/
@@ -201,6 +322,182 @@ public class PropAskTell {
 				_os.println("\nShow CNF set to " + SHOW_CNF_ON_ADD);
 			}
 
+			/***********************************************************
+			 * Command: Solver
+			 ***********************************************************/
+			else if (_ci.command.type == SOLVER) {
+			
+				if (_ci.command.numParams() >= 1) {
+					String solver = _ci.command.getParam(0);
+					if (solver.equalsIgnoreCase("cdcl"))
+						_kb._nSolverType = PropKbCNF.SOLVER_CDCL;
+					else if (solver.equalsIgnoreCase("dpll"))
+						_kb._nSolverType = PropKbCNF.SOLVER_DPLL;
+					else if (solver.equalsIgnoreCase("parallel"))
+						_kb._nSolverType = PropKbCNF.SOLVER_PARALLEL;
+					else
+						_os.println("\nUnrecognized solver '" + solver + "'");
+				}
+				
+				String[] names = { "dpll", "cdcl", "parallel" };
+				_os.println("\nSolver set to " + names[_kb._nSolverType]);
+			}
+
+			/***********************************************************
+			 * Command: Heuristic
+			 ***********************************************************/
+			else if (_ci.command.type == HEURISTIC) {
+			
+				if (_ci.command.numParams() >= 1) {
+					String heuristic = _ci.command.getParam(0);
+					if (heuristic.equalsIgnoreCase("default"))
+						_kb._nBranchHeuristic = SimpleDPLL.BRANCH_DEFAULT;
+					else if (heuristic.equalsIgnoreCase("simple"))
+						_kb._nBranchHeuristic = SimpleDPLL.BRANCH_SIMPLE;
+					else if (heuristic.equalsIgnoreCase("constrained"))
+						_kb._nBranchHeuristic = SimpleDPLL.BRANCH_MOST_CONSTRAINED;
+					else if (heuristic.equalsIgnoreCase("vsids"))
+						_kb._nBranchHeuristic = SimpleDPLL.BRANCH_VSIDS;
+					else
+						_os.println("\nUnrecognized heuristic '" + heuristic + "'");
+				}
+				
+				String[] names = { "default", "simple", "constrained", "vsids" };
+				_os.println("\nHeuristic set to " + names[_kb._nBranchHeuristic + 1]);
+			}
+
+			/***********************************************************
+			 * Command: Restarts
+			 ***********************************************************/
+			else if (_ci.command.type == RESTARTS) {
+			
+				if (_ci.command.numParams() >= 1) {
+					String restarts = _ci.command.getParam(0);
+					if (restarts.equalsIgnoreCase("default"))
+						_kb._nRestartPolicy = CDCLSolver.RESTART_DEFAULT;
+					else if (restarts.equalsIgnoreCase("none"))
+						_kb._nRestartPolicy = CDCLSolver.RESTART_NONE;
+					else if (restarts.equalsIgnoreCase("luby"))
+						_kb._nRestartPolicy = CDCLSolver.RESTART_LUBY;
+					else if (restarts.equalsIgnoreCase("glucose"))
+						_kb._nRestartPolicy = CDCLSolver.RESTART_GLUCOSE;
+					else
+						_os.println("\nUnrecognized restart policy '" + restarts + "'");
+				}
+				
+				String[] names = { "default", "none", "luby", "glucose" };
+				_os.println("\nRestarts set to " + names[_kb._nRestartPolicy + 1]);
+			}
+
+			/***********************************************************
+			 * Command: Phase saving
+			 ***********************************************************/
+			else if (_ci.command.type == PHASE_SAVING) {
+			
+				if (_ci.command.numParams() >= 1) {
+					String phase_param = _ci.command.getParam(0);
+					_kb._bPhaseSaving = phase_param.indexOf("true") >= 0;
+				}
+				
+				_os.println("\nPhase saving set to " + _kb._bPhaseSaving);
+			}
+
+			/***********************************************************
+			 * Command: CNF mode
+			 ***********************************************************/
+			else if (_ci.command.type == CNF_MODE) {
+			
+				if (_ci.command.numParams() >= 1) {
+					String mode = _ci.command.getParam(0);
+					if (mode.equalsIgnoreCase("distribute"))
+						_kb._nCNFMode = PropKbCNF.CNF_DISTRIBUTE;
+					else if (mode.equalsIgnoreCase("tseitin"))
+						_kb._nCNFMode = PropKbCNF.CNF_TSEITIN;
+					else if (mode.equalsIgnoreCase("pg"))
+						_kb._nCNFMode = PropKbCNF.CNF_PLAISTED_GREENBAUM;
+					else
+						_os.println("\nUnrecognized CNF mode '" + mode + "'");
+				}
+				
+				String[] names = { "distribute", "tseitin", "pg" };
+				_os.println("\nCNF mode set to " + names[_kb._nCNFMode]);
+			}
+
+			/***********************************************************
+			 * Command: Incremental
+			 ***********************************************************/
+			else if (_ci.command.type == INCREMENTAL) {
+			
+				if (_ci.command.numParams() >= 1) {
+					String inc_param = _ci.command.getParam(0);
+					_kb._bIncremental = inc_param.indexOf("true") >= 0;
+				}
+				
+				_os.println("\nIncremental solving set to " + _kb._bIncremental);
+			}
+
+			/***********************************************************
+			 * Command: Portfolio
+			 ***********************************************************/
+			else if (_ci.command.type == PORTFOLIO) {
+			
+				if (_ci.command.numParams() >= 1) {
+					try {
+						_kb._nPortfolioWorkers = Integer.parseInt(_ci.command.getParam(0).trim());
+					} catch (NumberFormatException e) {
+						_os.println("\nNumber of solvers must be an integer.");
+					}
+				}
+				
+				_os.println("\nPortfolio solvers set to " + _kb._nPortfolioWorkers + 
+						" (" + Runtime.getRuntime().availableProcessors() + " cores available)");
+			}
+
+			/***********************************************************
+			 * Command: Ask batch
+			 ***********************************************************/
+			else if (_ci.command.type == ASK_BATCH) {
+			
+				if (_ci.command.numParams() >= 1) {
+					String batch_param = _ci.command.getParam(0);
+					_bAskBatch = batch_param.indexOf("true") >= 0;
+				}
+				
+				_os.println("\nAsk batching set to " + _bAskBatch);
+			}
+
+			/***********************************************************
+			 * Command: Share clauses
+			 ***********************************************************/
+			else if (_ci.command.type == SHARE_CLAUSES) {
+			
+				if (_ci.command.numParams() >= 1) {
+					String share_param = _ci.command.getParam(0);
+					_kb._bShareClauses = share_param.indexOf("true") >= 0;
+				}
+				
+				_os.println("\nClause sharing set to " + _kb._bShareClauses);
+			}
+
+			/***********************************************************
+			 * Command: Preprocess
+			 ***********************************************************/
+			else if (_ci.command.type == PREPROCESS) {
+			
+				if (_ci.command.numParams() >= 1) {
+					String pre_param = _ci.command.getParam(0);
+					_kb._bPreprocess = pre_param.indexOf("true") >= 0;
+				}
+				
+				_os.println("\nPreprocessing set to " + _kb._bPreprocess);
+				Preprocessor pre = _kb._lastPreprocessor;
+				if (pre != null)
+					_os.println("Last preprocessing: " + pre._nUnits + " units, " + 
+							pre._nEquivalent + " equivalent vars, " + pre._nSubsumed + " subsumed, " +
+							pre._nStrengthened + " strengthened, " + pre._nEliminated + " eliminated vars, " +
+							pre._nFailed + " failed literals, " + pre.getClauses().size() + " clauses left");
+			}
+
 			/***********************************************************
 			 * Command: Tell
 			 ***********************************************************/
@@ -219,6 +516,8 @@ public class PropAskTell {
 						_axioms.add(query);
 						if (SHOW_CNF_ON_ADD)
 							_os.println("\nCNF: " + _kb.getFormula(query));
+					} catch (FormulaParser.ParseException e) {
+						_os.println("\n" + e.getMessage());
 					} catch (Exception e) {
 						// Just continue
 					}
@@ -234,17 +533,146 @@ public class PropAskTell {
 					_os.println("\nMust specify a single FOPC string as param.");
 				} else {
 
-					// Process the command
+					// Process the command (later if batching)
 					try {
 						String query = _ci.command.getParam(0);
-						_os.println("\nResult: " + (_kb.querySATSolver(query) ? "entailed" : "not entailed"));
+						if (_bAskBatch)
+							_alPendingAsks.add(query);
+						else
+							_os.println("\nResult: " + (_kb.querySATSolver(query) ? "entailed" : "not entailed"));
+					} catch (FormulaParser.ParseException e) {
+						_os.println("\n" + e.getMessage());
 					} catch (Exception e) {
 						System.err.println(e);
 					}
 				}
 			}
 
+			/***********************************************************
+			 * Command: Push
+			 ***********************************************************/
+			else if (_ci.command.type == PUSH) {
+
+				_kb.push();
+				_axiomMarks.add(_axioms.size());
+				_os.println("\nPushed scope " + _axiomMarks.size());
+			}
+
+			/***********************************************************
+			 * Command: Pop
+			 ***********************************************************/
+			else if (_ci.command.type == POP) {
+
+				int retracted = _kb.pop();
+				if (retracted < 0) {
+					_os.println("\nNo scope to pop.");
+				} else {
+					int mark = _axiomMarks.remove(_axiomMarks.size() - 1);
+					while (_axioms.size() > mark)
+						_axioms.remove(_axioms.size() - 1);
+					_os.println("\nPopped scope " + (_axiomMarks.size() + 1) + " (" + 
+							retracted + " clauses retracted)");
+				}
+			}
+
+			/***********************************************************
+			 * Command: Backbone
+			 ***********************************************************/
+			else if (_ci.command.type == BACKBONE) {
+
+				ArrayList<PropFormula.Term> backbone = _kb.computeBackbone();
+				if (backbone == null) {
+					_os.println("\nBackbone: kb is inconsistent (entails everything)");
+				} else {
+					StringBuilder sb = new StringBuilder();
+					for (PropFormula.Term t : backbone) {
+						if (t instanceof PropKbCNF.PropUnConn)
+							sb.append(" ~" + ((PropKbCNF.PropLiteral)((PropKbCNF.PropUnConn)t)._term)._sName);
+						else
+							sb.append(" " + ((PropKbCNF.PropLiteral)t)._sName);
+					}
+					_os.println("\nBackbone (" + backbone.size() + " literals, " + 
+							_kb._nBackboneCalls + " solver calls):" + sb);
+				}
+			}
+
+			/***********************************************************
+			 * Command: Models
+			 ***********************************************************/
+			else if (_ci.command.type == MODELS) {
+
+				try {
+					int max = 0;
+					if (_ci.command.numParams() >= 1)
+						max = Integer.parseInt(_ci.command.getParam(0).trim());
+					_os.println();
+					int num_models = _kb.enumerateModels(_os, max);
+					_os.println("Models: " + num_models + 
+							(max > 0 && num_models == max ? " (stopped at max)" : ""));
+				} catch (NumberFormatException e) {
+					_os.println("\nMax must be an integer.");
+				}
+			}
+
+			/***********************************************************
+			 * Command: Compile
+			 ***********************************************************/
+			else if (_ci.command.type == COMPILE) {
+
+				long start = System.currentTimeMillis();
+				PropBDD bdd = _kb.compileKb();
+				_os.println("\nCompiled kb to a BDD with " + bdd.size() + " nodes (" + 
+						bdd._nNodes + " created) in " + (System.currentTimeMillis() - start) + " ms");
+			}
+
+			/***********************************************************
+			 * Command: Cache stats
+			 ***********************************************************/
+			else if (_ci.command.type == CACHE_STATS) {
+
+				_os.println("\nQuery cache: " + _kb._hmQueryCache.size() + " entries, " + 
+						_kb._nCacheHits + " hits, " + _kb._nCacheMisses + " misses (kb generation " + 
+						_kb._nKbGeneration + ", " + (_kb._nKbStatus == PropKbCNF.CONSISTENT ? "consistent" :
+						(_kb._nKbStatus == PropKbCNF.INCONSISTENT ? "inconsistent" : "consistency unknown")) + ")");
+			}
+
+			/***********************************************************
+			 * Command: Count models
+			 ***********************************************************/
+			else if (_ci.command.type == COUNT_MODELS) {
+
+				_os.println("\nModel count: " + _kb.countModels() + " over the " + 
+						_kb.countClauseVars() + " vars of the kb clauses" +
+						(_kb._bPGClauses ? " (includes Plaisted-Greenbaum aux vars)" : ""));
+			}
+
+		}
+	}
+	
+	// Solves the pending batched asks concurrently and prints their
+	// results (or errors) in input order
+	public void flushAsks() {
+		if (_alPendingAsks.isEmpty())
+			return;
+		if (_batchPool == null)
+			_batchPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), 
+				new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread t = new Thread(r, "ask-batch");
+						t.setDaemon(true);
+						return t;
+					}
+				});
+		
+		String[] errors = new String[_alPendingAsks.size()];
+		Boolean[] results = _kb.queryBatch(_alPendingAsks, _batchPool, errors);
+		for (int i = 0; i < results.length; i++) {
+			if (results[i] != null)
+				_os.println("\nResult: " + (results[i] ? "entailed" : "not entailed"));
+			else if (errors[i] != null)
+				_os.println("\n" + errors[i]);
 		}
+		_alPendingAsks.clear();
 	}
 
 }
@@ -0,0 +1,208 @@
+package logic;
+import java.util.*;
+
+// A reduced ordered BDD package for compiling a clause set (see Bryant,
+// "Graph-Based Algorithms for Boolean Function Manipulation").  Nodes
+// are ints indexing parallel arrays; 0 and 1 are the FALSE and TRUE
+// terminals and vars are ordered by id.  A unique table per var makes
+// every node canonical and a computed cache memoizes apply().  Once a
+// kb is compiled, checking whether it entails a clause only needs one
+// pass over the nodes (see entails()) instead of a SAT search.
+public class PropBDD {
+
+	public static final int FALSE = 0;
+	public static final int TRUE  = 1;
+
+	public static final int OP_AND = 0;
+	public static final int OP_OR  = 1;
+
+	// Node store
+	public int[] _var;
+	public int[] _low;  // Child for var = false
+	public int[] _high; // Child for var = true
+	public int   _nNodes;
+
+	// Unique table: for each var, (low, high) -> node
+	public ArrayList<HashMap<Long, Integer>> _unique;
+
+	// Computed cache for apply(): (op, a, b) -> node
+	public ArrayList<HashMap<Long, Integer>> _computed;
+
+	// Root of the compiled clause set
+	public int _nRoot;
+
+	public PropBDD() {
+		_var = new int[1024];
+		_low = new int[1024];
+		_high = new int[1024];
+		_var[FALSE] = _var[TRUE] = Integer.MAX_VALUE; // Below every var
+		_nNodes = 2;
+		_unique = new ArrayList<HashMap<Long, Integer>>();
+		_computed = new ArrayList<HashMap<Long, Integer>>();
+		_computed.add(new HashMap<Long, Integer>()); // OP_AND
+		_computed.add(new HashMap<Long, Integer>()); // OP_OR
+		_nRoot = TRUE;
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+	// Node construction
+	////////////////////////////////////////////////////////////////////////////
+
+	// Returns the unique node (var ? high : low), applying the reduction
+	// rule low == high
+	public int makeNode(int var, int low, int high) {
+		if (low == high)
+			return low;
+		while (_unique.size() <= var)
+			_unique.add(new HashMap<Long, Integer>());
+		HashMap<Long, Integer> table = _unique.get(var);
+		Long key = pair(low, high);
+		Integer node = table.get(key);
+		if (node != null)
+			return node;
+
+		if (_nNodes == _var.length) {
+			int capacity = _nNodes << 1;
+			_var = Arrays.copyOf(_var, capacity);
+			_low = Arrays.copyOf(_low, capacity);
+			_high = Arrays.copyOf(_high, capacity);
+		}
+		_var[_nNodes] = var;
+		_low[_nNodes] = low;
+		_high[_nNodes] = high;
+		table.put(key, _nNodes);
+		return _nNodes++;
+	}
+
+	public static long pair(int a, int b) {
+		return ((long)a << 32) | (b & 0xFFFFFFFFL);
+	}
+
+	// Combines two BDDs with AND or OR (Shannon expansion on the top var)
+	public int apply(int op, int a, int b) {
+		// Terminal cases
+		if (op == OP_AND) {
+			if (a == FALSE || b == FALSE) return FALSE;
+			if (a == TRUE) return b;
+			if (b == TRUE || a == b) return a;
+		} else {
+			if (a == TRUE || b == TRUE) return TRUE;
+			if (a == FALSE) return b;
+			if (b == FALSE || a == b) return a;
+		}
+		if (a > b) { // Both ops are commutative
+			int t = a; a = b; b = t;
+		}
+
+		Long key = pair(a, b);
+		Integer cached = _computed.get(op).get(key);
+		if (cached != null)
+			return cached;
+
+		int var = Math.min(_var[a], _var[b]);
+		int a_low = _var[a] == var ? _low[a] : a;
+		int a_high = _var[a] == var ? _high[a] : a;
+		int b_low = _var[b] == var ? _low[b] : b;
+		int b_high = _var[b] == var ? _high[b] : b;
+		int result = makeNode(var, apply(op, a_low, b_low), apply(op, a_high, b_high));
+		_computed.get(op).put(key, result);
+		return result;
+	}
+
+	// Builds the BDD of a clause of DIMACS literals (a chain in var order)
+	public int makeClause(int[] lits) {
+		Integer[] order = new Integer[lits.length];
+		for (int i = 0; i < lits.length; i++)
+			order[i] = lits[i];
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Math.abs(b) - Math.abs(a); // Deepest var first
+			}
+		});
+		int node = FALSE;
+		for (int i = 0; i < order.length; i++) {
+			int var = Math.abs(order[i]);
+			if (i > 0 && Math.abs(order[i - 1]) == var) {
+				if (order[i - 1] != order[i])
+					return TRUE; // Tautology
+				continue;
+			}
+			node = order[i] > 0 ? makeNode(var, node, TRUE) : makeNode(var, TRUE, node);
+		}
+		return node;
+	}
+
+	// Compiles a clause set into _nRoot, conjoining the clauses pairwise
+	// (balanced) to keep intermediate BDDs small
+	public int compile(List<int[]> clauses) {
+		ArrayList<Integer> level = new ArrayList<Integer>(clauses.size());
+		for (int[] clause : clauses)
+			level.add(makeClause(clause));
+		while (level.size() > 1) {
+			ArrayList<Integer> next = new ArrayList<Integer>((level.size() + 1) / 2);
+			for (int i = 0; i < level.size(); i += 2)
+				next.add(i + 1 < level.size() ? apply(OP_AND, level.get(i), level.get(i + 1)) : level.get(i));
+			level = next;
+		}
+		_nRoot = level.isEmpty() ? TRUE : level.get(0);
+		clearCache();
+		return _nRoot;
+	}
+
+	public void clearCache() {
+		_computed.get(OP_AND).clear();
+		_computed.get(OP_OR).clear();
+	}
+
+	////////////////////////////////////////////////////////////////////////////
+	// Queries
+	////////////////////////////////////////////////////////////////////////////
+
+	// Does the compiled clause set entail the clause lits?  It does iff
+	// restricting it by the negation of the clause leaves FALSE, i.e., no
+	// path to TRUE agrees with every negated literal.  One visit per node.
+	public boolean entails(int[] lits) {
+		HashMap<Integer, Boolean> cube = new HashMap<Integer, Boolean>();
+		for (int l : lits) {
+			Boolean prev = cube.put(Math.abs(l), l < 0);
+			if (prev != null && prev != (l < 0))
+				return true; // Tautology
+		}
+		return !consistent(_nRoot, cube, new HashSet<Integer>());
+	}
+
+	// Is there a path from node to TRUE that agrees with cube?
+	// (visited holds nodes already known to have none)
+	public boolean consistent(int node, HashMap<Integer, Boolean> cube, HashSet<Integer> visited) {
+		if (node == TRUE)
+			return true;
+		if (node == FALSE || visited.contains(node))
+			return false;
+		Boolean val = cube.get(_var[node]);
+		if ((val == null || !val) && consistent(_low[node], cube, visited))
+			return true;
+		if ((val == null || val) && consistent(_high[node], cube, visited))
+			return true;
+		visited.add(node);
+		return false;
+	}
+
+	// Number of nodes reachable from the root (including terminals)
+	public int size() {
+		return size(_nRoot);
+	}
+
+	public int size(int root) {
+		HashSet<Integer> visited = new HashSet<Integer>();
+		ArrayList<Integer> stack = new ArrayList<Integer>();
+		stack.add(root);
+		while (!stack.isEmpty()) {
+			int node = stack.remove(stack.size() - 1);
+			if (!visited.add(node) || node <= TRUE)
+				continue;
+			stack.add(_low[node]);
+			stack.add(_high[node]);
+		}
+		return visited.size();
+	}
+}
@@ -3,11 +3,14 @@ package logic;
 public class PropFormula {
 
 	public abstract static class Term {
+		// Structural hash code, computed once by each subclass constructor
+		public int _nHash;
+		
 		public int hashCode() {
-			return toString().hashCode();
+			return _nHash;
 		}
 		public boolean equals(Object o) {
-			return toString().equals(o.toString());
+			return this == o;
 		}
 	}
 
@@ -28,6 +31,19 @@ public class PropFormula {
 
 	}
 
+	public abstract static class NaryConn // N-ary AND/OR, flattened
+			extends Term {
+
+		public final static int INVALID = 0;
+		public final static int AND = BinConn.AND;
+		public final static int OR = BinConn.OR;
+
+		public abstract Term[] getTerms(); // At least two, none of this type
+
+		public abstract int getType();
+
+	}
+
 	public abstract static class UnConn // UnaryConnective
 			extends Term {
 
@@ -1,6 +1,8 @@
 package logic;
 import java.io.*;
+import java.math.BigInteger;
 import java.util.*;
+import java.util.concurrent.*;
 
 // public class PropKbCNF extends Kb {
 public class PropKbCNF {
@@ -10,6 +12,20 @@ public class PropKbCNF {
 	public static final int INDETERMINATE = 0;
 	public static final int TAUTOLOGY = 1;
 	public static final int INCONSISTENT = 2;
+	public static final int CONSISTENT = 3;
+	
+	// Internal SAT solver types
+	public static final int SOLVER_DPLL = 0;
+	public static final int SOLVER_CDCL = 1;
+	public static final int SOLVER_PARALLEL = 2; // Cube-and-conquer DPLL
+	
+	// Query cache size
+	public static final int QUERY_CACHE_SIZE = 1024;
+	
+	// CNF conversion modes
+	public static final int CNF_DISTRIBUTE = 0;         // Distribute OR over AND
+	public static final int CNF_TSEITIN = 1;            // Auxiliary literal per subformula
+	public static final int CNF_PLAISTED_GREENBAUM = 2; // Tseitin, polarity-aware
 
 	// Data members for formula storage and var->id mapping
 	public int _nLiteralIDCount; // id counter for this kb
@@ -17,7 +33,61 @@ public class PropKbCNF {
 	public ArrayList _alLiteralList; // for id, returns PropLiteral
 	public ArrayList _alAssignment; // assignment for given var id
 	public HashMap _hmLiteralToID; // maps literal string -> id
-	public HashSet<HashSet<PropFormula.Term>> _cnfCurrentKb; // could add undo's here later :)
+	public HashSet<HashSet<PropFormula.Term>> _cnfCurrentKb; // undo with push()/pop()
+	public HashMap<PropFormula.Term, PropFormula.Term> _hmUniqueTerms; // hash-consing table
+	public ArrayList<HashMap<PropFormula.Term, PropLiteral>> _alTseitinLits; // aux literal by polarity + 1, term
+	public ArrayList<int[]> _alKbClauses; // _cnfCurrentKb as DIMACS literal arrays
+	public int _nLoadedClauses; // Leading _alKbClauses not yet in _cnfCurrentKb
+	
+	// Solver options
+	public int _nSolverType;
+	public int _nBranchHeuristic;
+	public int _nRestartPolicy;
+	public boolean _bPhaseSaving;
+	public int _nCNFMode;
+	public boolean _bIncremental;
+	public int _nPortfolioWorkers; // Race this many solvers per ask (if > 1)
+	public boolean _bShareClauses;
+	public boolean _bPreprocess; // Simplify clauses before a new solver runs
+	
+	// Persistent solver for incremental queries: holds the first 
+	// _nIncSynced clauses of _alKbClauses and all it has learned so far
+	public CDCLSolver _incSolver;
+	public int _nIncSynced;
+	public int _nBackboneCalls;
+	
+	// Set once a formula was added in Plaisted-Greenbaum mode: its aux
+	// vars are not defined by the named vars, so model counts over the
+	// clauses may differ from the counts over the named vars
+	public boolean _bPGClauses;
+	
+	// Compiled form of the kb (see compileKb()), dropped on every tell
+	// that adds clauses
+	public PropBDD _bdd;
+	
+	// Bounded LRU cache of query answers (see querySATSolver()); the kb
+	// generation counts the tells that added clauses
+	public long _nKbGeneration;
+	public LinkedHashMap<PropFormula.Term, QueryAnswer> _hmQueryCache;
+	public long _nCacheHits;
+	public long _nCacheMisses;
+	
+	// Whether the kb is known to be CONSISTENT (with a model of all its
+	// clauses in _kbWitness), INCONSISTENT or neither (INDETERMINATE)
+	public int _nKbStatus;
+	public byte[] _kbWitness;
+	
+	// Model found by the last query that was not entailed
+	public byte[] _lastModel;
+	
+	// Open push() scopes, innermost last
+	public ArrayList<KbScope> _alScopes;
+	
+	// Thread pool for portfolio asks (created on first use)
+	public PortfolioSolver _portfolio;
+	
+	// Preprocessor of the last ask that used one (for its statistics)
+	public Preprocessor _lastPreprocessor;
 
 	// Constructor (no params)
 	public PropKbCNF() {
@@ -31,7 +101,55 @@ public class PropKbCNF {
 		_alLiteralList.add(new Exception("Should not access first element"));
 		_alAssignment = new ArrayList();
 		_hmLiteralToID = new HashMap();
+		_hmUniqueTerms = new HashMap<PropFormula.Term, PropFormula.Term>();
+		_alTseitinLits = new ArrayList<HashMap<PropFormula.Term, PropLiteral>>();
+		for (int polarity = -1; polarity <= 1; polarity++)
+			_alTseitinLits.add(new HashMap<PropFormula.Term, PropLiteral>());
 		_cnfCurrentKb = new HashSet<HashSet<PropFormula.Term>>();
+		_alKbClauses = new ArrayList<int[]>();
+		_nLoadedClauses = 0;
+		_nSolverType = SOLVER_DPLL;
+		_nBranchHeuristic = SimpleDPLL.BRANCH_DEFAULT;
+		_nRestartPolicy = CDCLSolver.RESTART_DEFAULT;
+		_bPhaseSaving = true;
+		_nCNFMode = CNF_DISTRIBUTE;
+		_bIncremental = false;
+		_nPortfolioWorkers = 0;
+		_bShareClauses = false;
+		_bPreprocess = false;
+		_portfolio = null;
+		_lastPreprocessor = null;
+		_alScopes = new ArrayList<KbScope>();
+		_nKbGeneration = 0;
+		_hmQueryCache = new LinkedHashMap<PropFormula.Term, QueryAnswer>(16, 0.75f, true /* LRU */) {
+			protected boolean removeEldestEntry(Map.Entry<PropFormula.Term, QueryAnswer> eldest) {
+				return size() > QUERY_CACHE_SIZE;
+			}
+		};
+		_nCacheHits = 0;
+		_nCacheMisses = 0;
+		_nKbStatus = CONSISTENT; // The empty kb
+		_kbWitness = new byte[1];
+		_lastModel = null;
+		_incSolver = null;
+		_nIncSynced = 0;
+		_bPGClauses = false;
+		_bdd = null;
+	}
+	
+	// Copies the solver options of another kb (e.g., when a new kb
+	// replaces it)
+	public void copyOptions(PropKbCNF kb) {
+		_nSolverType = kb._nSolverType;
+		_nBranchHeuristic = kb._nBranchHeuristic;
+		_nRestartPolicy = kb._nRestartPolicy;
+		_bPhaseSaving = kb._bPhaseSaving;
+		_nCNFMode = kb._nCNFMode;
+		_bIncremental = kb._bIncremental;
+		_nPortfolioWorkers = kb._nPortfolioWorkers;
+		_bShareClauses = kb._bShareClauses;
+		_bPreprocess = kb._bPreprocess;
+		_portfolio = kb._portfolio; // Reuse the threads
 	}
 
 	////////////////////////////////////////////////////////////////////////////
@@ -73,70 +191,112 @@ public class PropKbCNF {
 		int id = _nLiteralIDCount++;
 		PropLiteral p = new PropLiteral(n, id);
 		_alLiteralList.add(p);
+		_alAssignment.add(null);
 		_hmLiteralToID.put(n, new Integer(id));
 		return p;
 	}
 
-	// Builds a right recursive conjunction of terms,
+	// Hash-consed term construction: every connective and constant is
+	// built through these so structurally identical terms are shared.
+	// Together with the hash codes cached at construction, clause set
+	// operations then cost O(1) per term instead of building toString()s.
+	// Terms must never be modified once created.
+	public PropFormula.Term makeBinConn(PropFormula.Term l, PropFormula.Term r, int type) {
+		if (type == PropFormula.BinConn.AND || type == PropFormula.BinConn.OR)
+			return makeNaryConn(new PropFormula.Term[] { l, r }, type);
+		return intern(new PropBinConn(l, r, type));
+	}
+	
+	// Builds an AND or OR of terms, splicing in the operands of terms of
+	// the same type, so a chain of ^ (or |) becomes one flat node.  One
+	// term is returned as is, and none gives the constant true for AND 
+	// (false for OR).
+	public PropFormula.Term makeNaryConn(List<PropFormula.Term> terms, int type) {
+		return makeNaryConn(terms.toArray(new PropFormula.Term[terms.size()]), type);
+	}
+	
+	public PropFormula.Term makeNaryConn(PropFormula.Term[] terms, int type) {
+		int size = 0;
+		for (PropFormula.Term t : terms)
+			size += isNary(t, type) ? ((PropNaryConn)t)._terms.length : 1;
+		if (size == 0)
+			return makeConstant(type == PropFormula.NaryConn.AND);
+		if (size == 1)
+			return isNary(terms[0], type) ? ((PropNaryConn)terms[0])._terms[0] : terms[0];
+		PropFormula.Term[] flat = terms;
+		if (size != terms.length) {
+			flat = new PropFormula.Term[size];
+			int pos = 0;
+			for (PropFormula.Term t : terms)
+				if (isNary(t, type)) {
+					PropFormula.Term[] sub = ((PropNaryConn)t)._terms;
+					System.arraycopy(sub, 0, flat, pos, sub.length);
+					pos += sub.length;
+				} else
+					flat[pos++] = t;
+		}
+		return intern(new PropNaryConn(flat, type));
+	}
+	
+	public static boolean isNary(PropFormula.Term t, int type) {
+		return t instanceof PropNaryConn && ((PropNaryConn)t)._nType == type;
+	}
+	
+	public PropFormula.Term makeUnConn(PropFormula.Term t, int type) {
+		return intern(new PropUnConn(t, type));
+	}
+	
+	public PropFormula.Term makeConstant(boolean val) {
+		return intern(new PropConstant(val));
+	}
+	
+	// Returns the shared copy of a term (whose subterms are shared)
+	public PropFormula.Term intern(PropFormula.Term t) {
+		PropFormula.Term shared = _hmUniqueTerms.get(t);
+		if (shared == null) {
+			_hmUniqueTerms.put(t, t);
+			return t;
+		}
+		return shared;
+	}
+
+	// Builds a (flat, n-ary) conjunction of terms,
 	// subterms must be empty or only have objects
 	// of type PropFormula.Term.
-	public static PropFormula.Term getConjTerm(List subterms) {
-		if (subterms.isEmpty()) {
-			return new PropConstant(true);
-		} else {
-			Iterator i = subterms.iterator();
-			PropFormula.Term cur = (PropFormula.Term) i.next();
-			while (i.hasNext()) {
-				cur = new PropBinConn(cur, (PropFormula.Term) i.next(),
-						PropFormula.BinConn.AND);
-			}
-			return cur;
-		}
+	public PropFormula.Term getConjTerm(List subterms) {
+		return makeNaryConn((List<PropFormula.Term>) subterms, PropFormula.NaryConn.AND);
 	}
 
-	// Builds a right recursive disjunction of terms,
+	// Builds a (flat, n-ary) disjunction of terms,
 	// subterms must be empty or only have objects
 	// of type PropFormula.Term.
-	public static PropFormula.Term getDisjTerm(List subterms) {
-		if (subterms.isEmpty()) {
-			return new PropConstant(false);
-		} else {
-			Iterator i = subterms.iterator();
-			PropFormula.Term cur = (PropFormula.Term) i.next();
-			while (i.hasNext()) {
-				cur = new PropBinConn(cur, (PropFormula.Term) i.next(),
-						PropFormula.BinConn.OR);
-			}
-			return cur;
-		}
+	public PropFormula.Term getDisjTerm(List subterms) {
+		return makeNaryConn((List<PropFormula.Term>) subterms, PropFormula.NaryConn.OR);
 	}
 
 	// Builds an implication from a list... empty list is true
 	// (correct?). (a b c d) is considered to be (a^b^c => d).
-	public static PropFormula.Term getImpliesTerm(List subterms) {
+	public PropFormula.Term getImpliesTerm(List subterms) {
 		if (subterms.isEmpty()) {
-			return new PropConstant(true);
+			return makeConstant(true);
 		} else {
 			PropFormula.Term implicant = (PropFormula.Term) subterms
 					.remove(subterms.size() - 1);
 			PropFormula.Term LHS = getConjTerm(subterms);
-			return new PropBinConn(LHS, implicant, PropFormula.BinConn.IMPLIES);
+			return makeBinConn(LHS, implicant, PropFormula.BinConn.IMPLIES);
 		}
 	}
 
 	// Builds an equivalence relation for exactly two terms (multiple
 	// terms are not allowed here).
-	public static PropFormula.Term getEquivTerm(List subterms) {
+	public PropFormula.Term getEquivTerm(List subterms) {
 		if (subterms.size() != 2) {
-			System.out
-					.println("Can only use <=> for two terms, use paren grouping for multiple terms");
-			System.exit(1);
-			return null;
+			throw new IllegalArgumentException("Can only use <=> for two terms, use paren grouping for multiple terms");
 		} else {
 			Iterator i = subterms.iterator();
 			PropFormula.Term lhs = (PropFormula.Term) i.next();
 			PropFormula.Term rhs = (PropFormula.Term) i.next();
-			return new PropBinConn(lhs, rhs, PropFormula.BinConn.EQUIV);
+			return makeBinConn(lhs, rhs, PropFormula.BinConn.EQUIV);
 		}
 	}
 
@@ -177,41 +337,22 @@ public class PropKbCNF {
 
 	// Simplify since likely used for reading
 	public HashSet<HashSet<PropFormula.Term>> getKb() {
+		convertLoadedClauses();
 		return _cnfCurrentKb;
 	}
 	
 	// Converts a PropFormula to negation normal form (NNF)
-	public static PropFormula.Term ConvertNNF(PropFormula.Term form,
+	public PropFormula.Term ConvertNNF(PropFormula.Term form,
 			boolean invert) {
 
-		if (form instanceof PropBinConn) {
+		if (form instanceof PropNaryConn) {
 
-			PropBinConn pb = (PropBinConn) form;
-			switch (pb.getType()) {
-
-			case PropBinConn.OR: {
-
-				return new PropBinConn(ConvertNNF(pb.getLTerm(), invert),
-						ConvertNNF(pb.getRTerm(), invert),
-						invert ? PropBinConn.AND : PropBinConn.OR);
-			}
-
-			case PropBinConn.AND: {
-
-				return new PropBinConn(ConvertNNF(pb.getLTerm(), invert),
-						ConvertNNF(pb.getRTerm(), invert),
-						invert ? PropBinConn.OR : PropBinConn.AND);
-			}
-
-			default: {
-				System.out.println("ConvertNNF: Illegal binary connective " + 
-						form + " : " + ((PropBinConn)form).getType());
-				new Exception().printStackTrace();
-				System.exit(1);
-				return null; // Never reached!
-			}
-
-			}
+			PropNaryConn pn = (PropNaryConn) form;
+			PropFormula.Term[] terms = new PropFormula.Term[pn._terms.length];
+			for (int i = 0; i < terms.length; i++)
+				terms[i] = ConvertNNF(pn._terms[i], invert);
+			return makeNaryConn(terms, invert == (pn._nType == PropNaryConn.AND) ? 
+					PropNaryConn.OR : PropNaryConn.AND);
 
 		} else if (form instanceof PropUnConn) {
 
@@ -227,7 +368,7 @@ public class PropKbCNF {
 
 			PropLiteral pl = (PropLiteral) form;
 			if (invert) {
-				return new PropUnConn(pl, PropUnConn.NEG);
+				return makeUnConn(pl, PropUnConn.NEG);
 			} else {
 				return pl;
 			}
@@ -236,7 +377,7 @@ public class PropKbCNF {
 
 			PropConstant pc = (PropConstant) form;
 			if (invert) {
-				return new PropConstant(!pc.getTruthValue());
+				return makeConstant(!pc.getTruthValue());
 			} else {
 				return pc;
 			}
@@ -246,7 +387,7 @@ public class PropKbCNF {
 	}
 
 	// Converts a propositional formula to DNF
-	public static HashSet<HashSet<PropFormula.Term>> ConvertCNF(PropFormula.Term form) {
+	public HashSet<HashSet<PropFormula.Term>> ConvertCNF(PropFormula.Term form) {
 		PropFormula.Term imp_form = RemoveEquiv(form);
 		PropFormula.Term and_or_form = RemoveImplies(imp_form);
 		PropFormula.Term nnf_form = ConvertNNF(and_or_form, false);
@@ -265,7 +406,7 @@ public class PropKbCNF {
 		return result;
 	}
 	
-	public static boolean tautology(HashSet<PropFormula.Term> clause) {
+	public boolean tautology(HashSet<PropFormula.Term> clause) {
 		for (PropFormula.Term t : clause) {
 			// Assumes PropUnConn is negation... should always be case
 			if (t instanceof PropUnConn) { 
@@ -273,7 +414,7 @@ public class PropKbCNF {
 				if (clause.contains(un._term))
 					return true;
 			} else {
-				PropUnConn un = new PropUnConn(t, PropUnConn.NEG);
+				PropFormula.Term un = makeUnConn(t, PropUnConn.NEG);
 				if (clause.contains(un))
 					return true;
 			}
@@ -282,7 +423,7 @@ public class PropKbCNF {
 	}
 	
 	// Remove equivlances
-	public static PropFormula.Term RemoveEquiv(PropFormula.Term form) {
+	public PropFormula.Term RemoveEquiv(PropFormula.Term form) {
 
 		if (form instanceof PropBinConn && 
 			((PropBinConn)form).getType() == PropBinConn.EQUIV) {
@@ -291,27 +432,33 @@ public class PropKbCNF {
 			PropFormula.Term lterm_cnf = RemoveEquiv(pb.getLTerm());
 			PropFormula.Term rterm_cnf = RemoveEquiv(pb.getRTerm());
 
-			return new PropBinConn(
-				new PropBinConn(lterm_cnf, rterm_cnf, PropBinConn.IMPLIES),
-				new PropBinConn(rterm_cnf, lterm_cnf, PropBinConn.IMPLIES), 
-				PropBinConn.AND);
+			return makeNaryConn(new PropFormula.Term[] {
+				makeBinConn(lterm_cnf, rterm_cnf, PropBinConn.IMPLIES),
+				makeBinConn(rterm_cnf, lterm_cnf, PropBinConn.IMPLIES) }, 
+				PropNaryConn.AND);
+		} else if (form instanceof PropNaryConn) {
+			
+			PropNaryConn pn = (PropNaryConn) form;
+			PropFormula.Term[] terms = new PropFormula.Term[pn._terms.length];
+			for (int i = 0; i < terms.length; i++)
+				terms[i] = RemoveEquiv(pn._terms[i]);
+			return makeNaryConn(terms, pn._nType);
+
 		} else if (form instanceof PropBinConn) {
 			
 			PropBinConn pb = (PropBinConn) form;
-			pb._termL = RemoveEquiv(pb.getLTerm());
-			pb._termR = RemoveEquiv(pb.getRTerm());
-			return pb;
+			return makeBinConn(RemoveEquiv(pb.getLTerm()), 
+					RemoveEquiv(pb.getRTerm()), pb.getType());
 
 		} else if (form instanceof PropUnConn) {
 			PropUnConn un = (PropUnConn) form;
-			un._term = RemoveEquiv(un._term);
-			return un;
+			return makeUnConn(RemoveEquiv(un._term), un.getType());
 		} else		
 			return form;
 	}
 
 	// Remove implications
-	public static PropFormula.Term RemoveImplies(PropFormula.Term form) {
+	public PropFormula.Term RemoveImplies(PropFormula.Term form) {
 
 		if (form instanceof PropBinConn && 
 			((PropBinConn)form).getType() == PropBinConn.IMPLIES) {
@@ -320,21 +467,28 @@ public class PropKbCNF {
 			PropFormula.Term lterm_cnf = RemoveImplies(pb.getLTerm());
 			PropFormula.Term rterm_cnf = RemoveImplies(pb.getRTerm());
 
-			return new PropBinConn(new PropUnConn(lterm_cnf, PropFormula.UnConn.NEG), 
-					rterm_cnf, PropBinConn.OR);
+			return makeNaryConn(new PropFormula.Term[] {
+					makeUnConn(lterm_cnf, PropFormula.UnConn.NEG), rterm_cnf }, 
+					PropNaryConn.OR);
 			
+		} else if (form instanceof PropNaryConn) {
+			
+			PropNaryConn pn = (PropNaryConn) form;
+			PropFormula.Term[] terms = new PropFormula.Term[pn._terms.length];
+			for (int i = 0; i < terms.length; i++)
+				terms[i] = RemoveImplies(pn._terms[i]);
+			return makeNaryConn(terms, pn._nType);
+
 		} else if (form instanceof PropBinConn) {
 			
 			PropBinConn pb = (PropBinConn) form;
-			pb._termL = RemoveImplies(pb.getLTerm());
-			pb._termR = RemoveImplies(pb.getRTerm());
-			return pb;
+			return makeBinConn(RemoveImplies(pb.getLTerm()), 
+					RemoveImplies(pb.getRTerm()), pb.getType());
 
 		} else if (form instanceof PropUnConn) {
 			
 			PropUnConn un = (PropUnConn) form;
-			un._term = RemoveImplies(un._term);
-			return un;
+			return makeUnConn(RemoveImplies(un._term), un.getType());
 			
 		} else			
 			return form;
@@ -343,40 +497,45 @@ public class PropKbCNF {
 	// Result is a set of clauses (themselves sets of literals)
 	public static HashSet<HashSet<PropFormula.Term>> DistOrOverAnd(PropFormula.Term form) {
 
-		if (form instanceof PropBinConn) {
-
-			PropBinConn pb = (PropBinConn) form;
-			HashSet<HashSet<PropFormula.Term>> lterm_cnf = DistOrOverAnd(pb.getLTerm());
-			HashSet<HashSet<PropFormula.Term>> rterm_cnf = DistOrOverAnd(pb.getRTerm());
-
-			HashSet<HashSet<PropFormula.Term>> ret = new HashSet<HashSet<PropFormula.Term>>();
-			
-			switch (pb.getType()) {
+		if (form instanceof PropNaryConn) {
 
-			case PropBinConn.AND: {
-				lterm_cnf.addAll(rterm_cnf);
-				return lterm_cnf;
+			PropNaryConn pn = (PropNaryConn) form;
+			if (pn._nType == PropNaryConn.AND) {
+				HashSet<HashSet<PropFormula.Term>> ret = new HashSet<HashSet<PropFormula.Term>>();
+				for (PropFormula.Term t : pn._terms)
+					ret.addAll(DistOrOverAnd(t));
+				return ret;
 			}
 
-			case PropBinConn.OR: {
-
-				for (HashSet<PropFormula.Term> l : lterm_cnf) {
-					for (HashSet<PropFormula.Term> r : rterm_cnf) {
-						HashSet<PropFormula.Term> new_clause = new HashSet<PropFormula.Term>();
-						new_clause.addAll(l);
+			// OR: the disjuncts that are single clauses (e.g., literals) 
+			// are merged into one clause in a single pass; only the rest
+			// need distributing, each multiplying the clauses so far
+			HashSet<PropFormula.Term> base = new HashSet<PropFormula.Term>();
+			ArrayList<HashSet<HashSet<PropFormula.Term>>> products = 
+				new ArrayList<HashSet<HashSet<PropFormula.Term>>>();
+			for (PropFormula.Term t : pn._terms) {
+				HashSet<HashSet<PropFormula.Term>> cnf = DistOrOverAnd(t);
+				if (cnf.isEmpty())
+					return cnf; // A true disjunct
+				if (cnf.size() == 1)
+					base.addAll(cnf.iterator().next());
+				else
+					products.add(cnf);
+			}
+			HashSet<HashSet<PropFormula.Term>> ret = new HashSet<HashSet<PropFormula.Term>>();
+			ret.add(base);
+			for (HashSet<HashSet<PropFormula.Term>> cnf : products) {
+				HashSet<HashSet<PropFormula.Term>> next = new HashSet<HashSet<PropFormula.Term>>();
+				for (HashSet<PropFormula.Term> l : ret) {
+					for (HashSet<PropFormula.Term> r : cnf) {
+						HashSet<PropFormula.Term> new_clause = new HashSet<PropFormula.Term>(l);
 						new_clause.addAll(r);
-						ret.add(new_clause);
+						next.add(new_clause);
 					}
 				}
-				return ret;
-			}
-			
-			default: {
-				System.out.println("ERROR: Illegal binary connective: " + form);
-				System.exit(1);
-				return null;
-			}
+				ret = next;
 			}
+			return ret;
 
 		} else {
 
@@ -405,6 +564,169 @@ public class PropKbCNF {
 		return form;
 	}
 	
+	////////////////////////////////////////////////////////////////////////////
+	// Tseitin / Plaisted-Greenbaum Conversion
+	////////////////////////////////////////////////////////////////////////////
+
+	// Converts a formula to CNF using the kb's CNF mode.  Distributing OR
+	// over AND can blow up exponentially (e.g., for nested <=>), while the
+	// Tseitin modes introduce a literal for each subformula (via 
+	// getTseitinLiteral()) so the result is linear in the formula size and
+	// equisatisfiable (which is all that entailment checks need).
+	public HashSet<HashSet<PropFormula.Term>> convertCNF(PropFormula.Term form) {
+		if (_nCNFMode == CNF_DISTRIBUTE)
+			return ConvertCNF(form);
+		HashSet<HashSet<PropFormula.Term>> clauses = new HashSet<HashSet<PropFormula.Term>>();
+		addTopLevelTseitin(form, clauses);
+		return clauses;
+	}
+	
+	// Top-level conjunctions and disjunctions need no new literals
+	public void addTopLevelTseitin(PropFormula.Term form, 
+			HashSet<HashSet<PropFormula.Term>> clauses) {
+		
+		if (isNary(form, PropNaryConn.AND)) {
+			for (PropFormula.Term t : ((PropNaryConn)form)._terms)
+				addTopLevelTseitin(t, clauses);
+		} else if (isNary(form, PropNaryConn.OR)) {
+			HashSet<PropFormula.Term> clause = new HashSet<PropFormula.Term>();
+			addTopLevelDisjuncts(form, clause, clauses);
+			clauses.add(clause);
+		} else {
+			clauses.add(getClause(encodeTseitin(form, 1, clauses)));
+		}
+	}
+	
+	// Collects the (encoded) disjuncts of a top-level disjunction
+	public void addTopLevelDisjuncts(PropFormula.Term form, HashSet<PropFormula.Term> clause,
+			HashSet<HashSet<PropFormula.Term>> clauses) {
+		
+		if (isNary(form, PropNaryConn.OR)) {
+			for (PropFormula.Term t : ((PropNaryConn)form)._terms)
+				addTopLevelDisjuncts(t, clause, clauses);
+		} else
+			clause.add(encodeTseitin(form, 1, clauses));
+	}
+	
+	// Returns a literal (or negated literal) equivalent to form, adding
+	// the clauses defining any new literal to clauses.  polarity is +1 
+	// (resp. -1) if form only occurs positively (resp. negatively) and 0
+	// if both.  In CNF_TSEITIN mode both directions of each definition 
+	// are added; Plaisted-Greenbaum only adds the direction needed for 
+	// the polarity, which roughly halves the number of clauses.
+	public PropFormula.Term encodeTseitin(PropFormula.Term form, int polarity,
+			HashSet<HashSet<PropFormula.Term>> clauses) {
+		
+		if (_nCNFMode == CNF_TSEITIN)
+			polarity = 0;
+		boolean pos = polarity >= 0; // Need x => form
+		boolean neg = polarity <= 0; // Need form => x
+		
+		if (form instanceof PropLiteral) {
+			
+			return form;
+			
+		} else if (form instanceof PropUnConn) {
+			
+			PropUnConn pu = (PropUnConn) form;
+			return negateLiteral(encodeTseitin(pu.getTerm(), -polarity, clauses));
+			
+		} else if (form instanceof PropConstant) {
+			
+			// A literal fixed to the constant's value
+			PropLiteral x = getTseitinLiteral(form, polarity);
+			PropFormula.Term lit = ((PropConstant)form).getTruthValue() ? x : negateLiteral(x);
+			clauses.add(getClause(lit));
+			return x;
+			
+		} else if (form instanceof PropNaryConn) {
+			
+			// x <=> (a1 ^ ... ^ an) or x <=> (a1 | ... | an): two 
+			// clauses per operand plus one wide clause
+			PropNaryConn pn = (PropNaryConn) form;
+			boolean and = pn._nType == PropNaryConn.AND;
+			PropLiteral x = getTseitinLiteral(form, polarity);
+			PropFormula.Term nx = negateLiteral(x);
+			HashSet<PropFormula.Term> wide = new HashSet<PropFormula.Term>();
+			wide.add(and ? x : nx);
+			for (PropFormula.Term t : pn._terms) {
+				PropFormula.Term a = encodeTseitin(t, polarity, clauses);
+				if (and ? pos : neg)
+					clauses.add(and ? getClause(nx, a) : getClause(negateLiteral(a), x));
+				wide.add(and ? negateLiteral(a) : a);
+			}
+			if (and ? neg : pos)
+				clauses.add(wide);
+			return x;
+			
+		}
+		
+		// PropBinConn: => or <=>
+		PropBinConn pb = (PropBinConn) form;
+		PropLiteral x = getTseitinLiteral(form, polarity);
+		PropFormula.Term nx = negateLiteral(x);
+		
+		switch (pb.getType()) {
+		
+		case PropBinConn.IMPLIES: {
+			PropFormula.Term a = encodeTseitin(pb.getLTerm(), -polarity, clauses);
+			PropFormula.Term b = encodeTseitin(pb.getRTerm(), polarity, clauses);
+			if (pos)
+				clauses.add(getClause(nx, negateLiteral(a), b));
+			if (neg) {
+				clauses.add(getClause(a, x));
+				clauses.add(getClause(negateLiteral(b), x));
+			}
+		}
+			break;
+			
+		case PropBinConn.EQUIV: {
+			PropFormula.Term a = encodeTseitin(pb.getLTerm(), 0, clauses);
+			PropFormula.Term b = encodeTseitin(pb.getRTerm(), 0, clauses);
+			if (pos) {
+				clauses.add(getClause(nx, negateLiteral(a), b));
+				clauses.add(getClause(nx, a, negateLiteral(b)));
+			}
+			if (neg) {
+				clauses.add(getClause(x, a, b));
+				clauses.add(getClause(x, negateLiteral(a), negateLiteral(b)));
+			}
+		}
+			break;
+		}
+		
+		return x;
+	}
+	
+	// The aux literal of an (interned) subformula at a polarity, created
+	// on first use.  Its definition clauses only depend on the literals of
+	// the subterms, so each conversion re-adds the very same clauses and
+	// repeated asks and tells of a subformula mint no new vars.
+	public PropLiteral getTseitinLiteral(PropFormula.Term form, int polarity) {
+		HashMap<PropFormula.Term, PropLiteral> lits = _alTseitinLits.get(polarity + 1);
+		PropLiteral x = lits.get(form);
+		if (x == null) {
+			x = getNewLiteral();
+			lits.put(form, x);
+		}
+		return x;
+	}
+	
+	// Negates a literal, removing double negations
+	public PropFormula.Term negateLiteral(PropFormula.Term lit) {
+		if (lit instanceof PropUnConn)
+			return ((PropUnConn)lit).getTerm();
+		return makeUnConn(lit, PropUnConn.NEG);
+	}
+	
+	// Builds a clause from the given literals
+	public static HashSet<PropFormula.Term> getClause(PropFormula.Term... lits) {
+		HashSet<PropFormula.Term> clause = new HashSet<PropFormula.Term>();
+		for (PropFormula.Term lit : lits)
+			clause.add(lit);
+		return clause;
+	}
+
 	////////////////////////////////////////////////////////////////////////////
 	// Main External Interface Routines
 	////////////////////////////////////////////////////////////////////////////
@@ -412,7 +734,7 @@ public class PropKbCNF {
 	// Adds formula given by a string to a kb
 	public HashSet<HashSet<PropFormula.Term>> getFormula(String s) {
 		ParseStruct ps = parseFormula(s, 0 /* start pos */);
-		return ConvertCNF(ps._propTerm);
+		return convertCNF(ps._propTerm);
 	}
 	
 	public void addFormula(String s) {
@@ -428,7 +750,75 @@ public class PropKbCNF {
 	// add undo here. :)
 	public void addFormula(PropFormula.Term formula) {
 		//System.out.println("Adding: " + formula + " as CNF\n" + ConvertCNF(formula));
-		_cnfCurrentKb.addAll(ConvertCNF(formula));
+		if (_nCNFMode == CNF_PLAISTED_GREENBAUM)
+			_bPGClauses = true;
+		boolean changed = false;
+		convertLoadedClauses();
+		for (HashSet<PropFormula.Term> clause : convertCNF(formula))
+			if (_cnfCurrentKb.add(clause)) {
+				int size = _alKbClauses.size();
+				if (!_alScopes.isEmpty())
+					_alScopes.get(_alScopes.size() - 1)._alAddedClauses.add(clause);
+				addIntClause(_alKbClauses, clause);
+				if (_alKbClauses.size() > size)
+					updateKbStatus(_alKbClauses.get(size));
+				_bdd = null;
+				changed = true;
+			}
+		if (changed)
+			++_nKbGeneration; // Invalidates the cached "not entailed" answers
+	}
+	
+	// Adds a clause of DIMACS literals over known literal ids (e.g., from
+	// a KbSnapshot, whose clauses are distinct) to a kb that has no 
+	// other clauses yet.  Only the int clause is stored: the solvers need
+	// nothing else, and its term set is built by convertLoadedClauses()
+	// when _cnfCurrentKb is first needed.
+	public void addLoadedClause(int[] lits) {
+		if (_nLoadedClauses != _alKbClauses.size())
+			throw new IllegalStateException("Clauses can only be loaded into a new kb");
+		_alKbClauses.add(lits);
+		++_nLoadedClauses;
+		_bdd = null;
+		++_nKbGeneration;
+	}
+	
+	// Adds the term sets of the loaded clauses to _cnfCurrentKb
+	public void convertLoadedClauses() {
+		for (int i = 0; i < _nLoadedClauses; i++) {
+			HashSet<PropFormula.Term> clause = new HashSet<PropFormula.Term>();
+			for (int literal : _alKbClauses.get(i)) {
+				PropLiteral l = getLiteral(CDCLSolver.var(literal));
+				clause.add(literal > 0 ? l : negateLiteral(l));
+			}
+			_cnfCurrentKb.add(clause);
+		}
+		_nLoadedClauses = 0;
+	}
+	
+	// Converts a clause to an array of DIMACS literals (var id, negated 
+	// if the literal is negated) and adds it to clauses.  Clauses with a
+	// true constant are skipped and false constants are dropped.
+	public static void addIntClause(ArrayList<int[]> clauses, HashSet<PropFormula.Term> clause) {
+		int[] lits = new int[clause.size()];
+		int len = 0;
+		for (PropFormula.Term t : clause) {
+			if (t instanceof PropUnConn) {
+				PropFormula.Term l = ((PropUnConn)t)._term;
+				if (l instanceof PropConstant) {
+					if (!((PropConstant)l)._bVal)
+						return;
+					continue;
+				}
+				lits[len++] = -((PropLiteral)l)._nID;
+			} else if (t instanceof PropLiteral) {
+				lits[len++] = ((PropLiteral)t)._nID;
+			} else if (t instanceof PropConstant) {
+				if (((PropConstant)t)._bVal)
+					return;
+			}
+		}
+		clauses.add(len == lits.length ? lits : Arrays.copyOf(lits, len));
 	}
 
 	public String toString() {
@@ -441,7 +831,7 @@ public class PropKbCNF {
 			PropLiteral l = (PropLiteral)o;
 			sb.append(l._sName + "->" + l._nID + " ");
 		}
-		sb.append("\n" + _cnfCurrentKb);
+		sb.append("\n" + getKb());
 		return sb.toString();
 	}
 
@@ -449,16 +839,18 @@ public class PropKbCNF {
 	// Internal Formula Representation - Implements PropFormula
 	////////////////////////////////////////////////////////////////////////////
 
+	// => and <=> (AND and OR are always PropNaryConn, see makeBinConn())
 	public static class PropBinConn extends PropFormula.BinConn {
 
-		public PropFormula.Term _termL;
-		public PropFormula.Term _termR;
-		public int _nType;
+		public final PropFormula.Term _termL;
+		public final PropFormula.Term _termR;
+		public final int _nType;
 
 		public PropBinConn(PropFormula.Term l, PropFormula.Term r, int type) {
 			_termL = l;
 			_termR = r;
 			_nType = type;
+			_nHash = (31 * (31 * type + l._nHash) + r._nHash) * 0x9E3779B1;
 		}
 
 		public PropFormula.Term getLTerm() {
@@ -476,8 +868,6 @@ public class PropKbCNF {
 		public String toString() {
 			String conn = null;
 			switch (_nType) {
-			case PropBinConn.AND: conn = " ^ "; break;
-			case PropBinConn.OR:  conn = " | "; break; 
 			case PropBinConn.IMPLIES: conn = " => "; break;
 			case PropBinConn.EQUIV:   conn = " <=> "; break;
 			default: conn = " [INVALID] "; break;
@@ -485,16 +875,19 @@ public class PropKbCNF {
 			return "( " + _termL.toString() + conn + _termR.toString() + " )";
 		}
 
-		// Perform structural comparison
+		// Perform structural comparison (shared terms are identical, so
+		// this is usually decided by the first test or the hash codes)
 		public boolean equals(Object o) {
 
-			if (o instanceof PropBinConn) {
+			if (o == this) {
+				return true;
+			} else if (o instanceof PropBinConn) {
 
 				// Avoiding checking cross terms because this would lead to
 				// exponential
 				// recursions
 				PropBinConn b = (PropBinConn) o;
-				return (_nType == b._nType)
+				return (_nType == b._nType) && (_nHash == b._nHash)
 						&& (_termL.equals(b._termL) && _termR.equals(b._termR));
 
 			} else {
@@ -505,14 +898,71 @@ public class PropKbCNF {
 
 	}
 
+	public static class PropNaryConn extends PropFormula.NaryConn {
+
+		public final PropFormula.Term[] _terms;
+		public final int _nType;
+
+		public PropNaryConn(PropFormula.Term[] terms, int type) {
+			_terms = terms;
+			_nType = type;
+			int hash = type;
+			for (PropFormula.Term t : terms)
+				hash = 31 * hash + t._nHash;
+			_nHash = hash * 0x7FEB352D;
+		}
+
+		public PropFormula.Term[] getTerms() {
+			return _terms;
+		}
+
+		public int getType() {
+			return _nType;
+		}
+
+		public String toString() {
+			String conn = _nType == AND ? " ^ " : (_nType == OR ? " | " : " [INVALID] ");
+			StringBuilder sb = new StringBuilder("( ");
+			for (int i = 0; i < _terms.length; i++) {
+				if (i > 0)
+					sb.append(conn);
+				sb.append(_terms[i]);
+			}
+			return sb.append(" )").toString();
+		}
+
+		// Perform structural comparison (operands in order)
+		public boolean equals(Object o) {
+
+			if (o == this) {
+				return true;
+			} else if (o instanceof PropNaryConn) {
+
+				PropNaryConn n = (PropNaryConn) o;
+				if (_nType != n._nType || _nHash != n._nHash || _terms.length != n._terms.length)
+					return false;
+				for (int i = 0; i < _terms.length; i++)
+					if (!_terms[i].equals(n._terms[i]))
+						return false;
+				return true;
+
+			} else {
+				return false;
+			}
+
+		}
+
+	}
+
 	public static class PropUnConn extends PropFormula.UnConn {
 
-		public PropFormula.Term _term;
-		public int _nType;
+		public final PropFormula.Term _term;
+		public final int _nType;
 
 		public PropUnConn(PropFormula.Term t, int type) {
 			_term = t;
 			_nType = type;
+			_nHash = (31 * type + t._nHash) * 0x61C88647;
 		}
 
 		public PropFormula.Term getTerm() {
@@ -530,10 +980,13 @@ public class PropKbCNF {
 		// Perform structural comparison
 		public boolean equals(Object o) {
 
-			if (o instanceof PropUnConn) {
+			if (o == this) {
+				return true;
+			} else if (o instanceof PropUnConn) {
 
 				PropUnConn u = (PropUnConn) o;
-				return (_nType == u._nType) && _term.equals(u._term);
+				return (_nType == u._nType) && (_nHash == u._nHash) 
+						&& _term.equals(u._term);
 
 			} else {
 				return false;
@@ -552,6 +1005,7 @@ public class PropKbCNF {
 		public PropLiteral(String name, int id) {
 			_sName = name;
 			_nID = id;
+			_nHash = id;
 		}
 
 		// Unique id for a literal
@@ -589,6 +1043,7 @@ public class PropKbCNF {
 
 		public PropConstant(boolean val) {
 			_bVal = val;
+			_nHash = val ? 1231 : 1237;
 		}
 
 		public boolean getTruthValue() {
@@ -619,319 +1074,635 @@ public class PropKbCNF {
 	////////////////////////////////////////////////////////////////////////////
 
 	// Parse a formula string and return the Term tree (create all
-	// necessary literals in current kb). This is a simple parser
-	// that simply recurses for every '(' encountered and pops for
-	// every ')' encountered. Within any recursion level, either '^',
-	// '|', '<=>' or '=>' must be used exclusively. So "~a ^ b | c"
-	// is illegal, but "(~a ^ b) | c" is legal. Note: T and F are
-	// interpreted as true and false *constants*. Negations must be
-	// followed by a char or opening paren. This allows some illegal
-	// syntax but it works for the most part. :)
+	// necessary literals in current kb), see FormulaParser for the
+	// syntax.  Parses from start_pos to the end of the string; throws
+	// a FormulaParser.ParseException on malformed input.
 	public static class ParseStruct {
 		public int _nFinalPos;
 		public PropFormula.Term _propTerm;
 	}
 
 	public ParseStruct parseFormula(String s, int start_pos) {
+		ParseStruct ps = new ParseStruct();
+		ps._propTerm = new FormulaParser(this, s.substring(start_pos)).parse();
+		ps._nFinalPos = s.length();
+		return ps;
+	}
 
-		int pos = start_pos;
-		int pos_max = s.length();
-		boolean conj = false;
-		boolean disj = false;
-		boolean neg = false;
-		boolean implies = false;
-		boolean equiv = false;
-		ArrayList terms = new ArrayList();
-		String cur_lit = null;
-
-		// Read string, parsing off literals and checking
-		// for type. If '(' reached then recurse and
-		// continue from _nFinalPos. If ')' or end of
-		// string reached, return pos and formula.
-		for (; pos < pos_max; pos++) {
-
-			char c = s.charAt(pos);
-
-			// System.out.println("Checking '" + c + "'");
-
-			switch (c) {
-
-			case '(': {
-				ParseStruct ps = parseFormula(s, pos + 1);
-				pos = ps._nFinalPos;
-				if (neg) {
-					terms.add(new PropUnConn(ps._propTerm,
-							PropFormula.UnConn.NEG));
-				} else {
-					terms.add(ps._propTerm);
-				}
-				neg = false;
-			}
-				break;
-
-			case ')': {
-				// First check to close a literal - ugly
-				if (cur_lit != null) {
-					if (neg) {
-						terms.add(new PropUnConn(getLiteral(cur_lit),
-								PropFormula.UnConn.NEG));
-					} else {
-						terms.add(getLiteral(cur_lit));
-					}
-					cur_lit = null;
-					neg = false;
-				}
+	// Answers a query from the compiled kb if there is one, otherwise
+	// from the query cache or else with the selected solver
+	public boolean querySATSolver(String query) {
+		if (_bdd != null)
+			return queryCompiledKb(query);
+		PropFormula.Term key = getQueryKey(query);
+		Boolean cached = lookupQuery(key);
+		if (cached != null)
+			return cached;
+		
+		ArrayList<int[]> query_clauses = getQueryClauses(key);
+		boolean entailed;
+		if (_nPortfolioWorkers > 1)
+			entailed = queryPortfolio(query_clauses);
+		else if (_bIncremental)
+			entailed = queryIncrementalSATSolver(query_clauses);
+		else
+			entailed = queryInternalSATSolver(query_clauses);
+		storeQuery(key, query_clauses, entailed, _lastModel);
+		return entailed;
+	}
+	
+	////////////////////////////////////////////////////////////////////////////
+	// Query Cache
+	////////////////////////////////////////////////////////////////////////////
 
-				// Now return the correct structure - this also occurs below!!!
-				// Ugly code... need to update.
-				ParseStruct ps = new ParseStruct();
-				ps._nFinalPos = pos;
-				if (conj) {
-					ps._propTerm = getConjTerm(terms);
-				} else if (disj) {
-					ps._propTerm = getDisjTerm(terms);
-				} else if (implies) {
-					ps._propTerm = getImpliesTerm(terms);
-				} else if (equiv) {
-					ps._propTerm = getEquivTerm(terms);
-				} else if (terms.size() == 1) {
-					ps._propTerm = (PropFormula.Term) terms.get(0);
-				} else {
-					System.out.println("Formula error: malformed subformula");
-					System.exit(1);
-				}
-				return ps;
+	// A cached answer and the kb generation it was computed for
+	public static class QueryAnswer {
+		public boolean _bEntailed;
+		public long _nGeneration;
+		
+		public QueryAnswer(boolean entailed, long generation) {
+			_bEntailed = entailed;
+			_nGeneration = generation;
+		}
+	}
+	
+	// The cache key of a query: its interned negation.  Hash-consing 
+	// shares structurally equal terms, so the key is found without 
+	// converting the query to clauses (nor creating any aux vars).
+	public PropFormula.Term getQueryKey(String query) {
+		return makeUnConn(parseFormula(query, 0)._propTerm, PropFormula.UnConn.NEG);
+	}
+	
+	// Returns the known answer for a query key (or null), counting hits
+	// and misses.  Entailment is monotone: a tell only adds clauses, so 
+	// an "entailed" answer stays valid after any later tell (even one 
+	// making the kb inconsistent, which entails everything), while "not
+	// entailed" is only reused for the generation it was computed for.
+	// A kb known to be inconsistent entails every query.
+	public Boolean lookupQuery(PropFormula.Term key) {
+		QueryAnswer answer = _hmQueryCache.get(key);
+		if (_nKbStatus == INCONSISTENT) {
+			++_nCacheHits;
+			return true;
+		} else if (answer != null && (answer._bEntailed || answer._nGeneration == _nKbGeneration)) {
+			++_nCacheHits;
+			return answer._bEntailed;
+		}
+		++_nCacheMisses;
+		return null;
+	}
+	
+	// Caches a new answer.  A query that is not entailed comes with a
+	// model of the kb (and the negated query), which proves the kb
+	// consistent; the model is kept as a witness (see addFormula()).  A
+	// valid query (no clauses once negated) is only entailed by an 
+	// inconsistent kb.
+	public void storeQuery(PropFormula.Term key, ArrayList<int[]> query_clauses, 
+			boolean entailed, byte[] model) {
+		_hmQueryCache.put(key, new QueryAnswer(entailed, _nKbGeneration));
+		if (entailed && query_clauses.isEmpty())
+			_nKbStatus = INCONSISTENT; // Nothing but the kb was refuted
+		else if (!entailed) {
+			_nKbStatus = CONSISTENT;
+			_kbWitness = model;
+		}
+	}
+	
+	// Keeps the kb status up to date after a clause was added: the kb 
+	// stays consistent if the witness model satisfies the clause, an 
+	// empty clause makes it inconsistent, and otherwise it is unknown
+	// until the next query that is not entailed
+	public void updateKbStatus(int[] clause) {
+		if (clause.length == 0)
+			_nKbStatus = INCONSISTENT;
+		else if (_nKbStatus == CONSISTENT && !satisfies(_kbWitness, clause))
+			_nKbStatus = INDETERMINATE;
+	}
+	
+	// Does an assignment (indexed by var id) satisfy a clause?
+	public static boolean satisfies(byte[] model, int[] clause) {
+		if (model == null)
+			return false;
+		for (int literal : clause) {
+			int var = CDCLSolver.var(literal);
+			if (var < model.length && model[var] == (literal > 0 ? SimpleDPLL.VAL_TRUE : SimpleDPLL.VAL_FALSE))
+				return true;
+		}
+		return false;
+	}
+	
+	// Compiles the current kb clauses into a BDD that answers asks until
+	// the next tell adds clauses
+	public PropBDD compileKb() {
+		_bdd = new PropBDD();
+		_bdd.compile(_alKbClauses);
+		return _bdd;
+	}
+	
+	// Answers a query with the compiled kb: the kb entails the query iff
+	// it entails every clause of the (distributive) CNF of the query, and
+	// each clause is checked by restricting the BDD (see PropBDD.entails())
+	public boolean queryCompiledKb(String query) {
+		ParseStruct ps = parseFormula(query, 0 /* start pos */);
+		ArrayList<int[]> query_clauses = new ArrayList<int[]>();
+		for (HashSet<PropFormula.Term> clause : ConvertCNF(ps._propTerm))
+			addIntClause(query_clauses, clause);
+		for (int[] clause : query_clauses)
+			if (!_bdd.entails(clause))
+				return false;
+		return true;
+	}
+	
+	// Answers a query by racing _nPortfolioWorkers differently configured
+	// CDCL solvers (see PortfolioSolver), each with its own copy of the 
+	// kb clauses and negated query clauses
+	public boolean queryPortfolio(String query) {
+		return queryPortfolio(getQueryClauses(query));
+	}
+	
+	public boolean queryPortfolio(ArrayList<int[]> query_clauses) {
+		if (_portfolio == null || _portfolio._nWorkers != _nPortfolioWorkers) {
+			if (_portfolio != null)
+				_portfolio.shutdown();
+			_portfolio = new PortfolioSolver(_nPortfolioWorkers, _bShareClauses);
+		}
+		_portfolio._bShareClauses = _bShareClauses;
+		Preprocessor pre = preprocess(query_clauses, _nLiteralIDCount - 1);
+		if (pre != null)
+			_lastPreprocessor = pre;
+		if (pre != null && pre._bUnsat) {
+			_lastModel = null;
+			return true;
+		}
+		CDCLSolver[] workers = new CDCLSolver[_nPortfolioWorkers];
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = _portfolio.newWorker(i);
+			configureSolver(workers[i]);
+			if (pre != null)
+				loadClauses(workers[i], pre);
+			else
+				loadClauses(workers[i], query_clauses);
+		}
+		boolean unsat = _portfolio.unsat(workers);
+		_lastModel = reconstructModel(pre, _portfolio._model);
+		return unsat;
+	}
+	
+	// Answers a query with the persistent solver.  Each clause of the 
+	// negated query is guarded by a new activation literal a (i.e., 
+	// added as ~a | clause) and the solver is run under the assumption
+	// a; afterwards ~a is asserted, which retires the query clauses for 
+	// good while the kb clauses and learned clauses stay loaded.
+	public boolean queryIncrementalSATSolver(String query) {
+		return queryIncrementalSATSolver(getQueryClauses(query));
+	}
+	
+	public boolean queryIncrementalSATSolver(ArrayList<int[]> query_clauses) {
+		CDCLSolver solver = getIncrementalSolver();
+		int act = getNewLiteral()._nID;
+		solver.ensureVars(act);
+		for (int[] clause : query_clauses) {
+			int[] guarded = new int[clause.length + 1];
+			guarded[0] = -act;
+			System.arraycopy(clause, 0, guarded, 1, clause.length);
+			solver.addIncrementalClause(guarded);
+		}
+		
+		boolean unsat = solver.unsat(getAssumptions(act));
+		_lastModel = unsat ? null : solver._model; // Only SAT calls replace _model
+		if (solver._bRootUnsat) // The kb clauses alone are UNSAT
+			_nKbStatus = INCONSISTENT;
+		solver.addIncrementalClause(new int[] { -act });
+		return unsat;
+	}
+	
+	// Computes the backbone of the kb: every literal (over named, i.e., 
+	// non-auxiliary vars) that is true in all models and hence entailed.
+	// Starts from one model and repeatedly asks for a model flipping at
+	// least one remaining candidate (guarded by an activation literal as
+	// in queryIncrementalSATSolver()); candidates that flip are dropped,
+	// and once no such model exists the remaining ones are the backbone.
+	// Returns null if the kb is inconsistent.  _nBackboneCalls is set to
+	// the number of solver calls made.
+	public ArrayList<PropFormula.Term> computeBackbone() {
+		CDCLSolver solver = getIncrementalSolver();
+		_nBackboneCalls = 1;
+		if (solver.unsat(getAssumptions(0))) {
+			_nKbStatus = INCONSISTENT;
+			return null;
+		}
+		
+		ArrayList<PropFormula.Term> backbone = new ArrayList<PropFormula.Term>();
+		int[] candidates = new int[_nLiteralIDCount];
+		int num_candidates = 0;
+		for (int id = 1; id < _nLiteralIDCount; id++) {
+			PropLiteral l = getLiteral(id);
+			if (l._sName.startsWith("<"))
+				continue; // Auxiliary literal
+			int value = solver.valueOf(id);
+			if (value != SimpleDPLL.VAL_UNASSIGNED) // Fixed at the root
+				backbone.add(value == SimpleDPLL.VAL_TRUE ? l : makeUnConn(l, PropUnConn.NEG));
+			else
+				candidates[num_candidates++] = solver._model[id] == SimpleDPLL.VAL_TRUE ? id : -id;
+		}
+		
+		while (num_candidates > 0) {
+			int act = getNewLiteral()._nID;
+			solver.ensureVars(act);
+			int[] block = new int[num_candidates + 1];
+			block[0] = -act;
+			for (int i = 0; i < num_candidates; i++)
+				block[i + 1] = -candidates[i];
+			solver.addIncrementalClause(block);
+			++_nBackboneCalls;
+			boolean unsat = solver.unsat(getAssumptions(act));
+			solver.addIncrementalClause(new int[] { -act });
+			if (unsat)
+				break; // No model flips a remaining candidate
+			
+			int kept = 0;
+			for (int i = 0; i < num_candidates; i++)
+				if (solver._model[CDCLSolver.var(candidates[i])] == 
+						(candidates[i] > 0 ? SimpleDPLL.VAL_TRUE : SimpleDPLL.VAL_FALSE))
+					candidates[kept++] = candidates[i];
+			num_candidates = kept;
+		}
+		
+		for (int i = 0; i < num_candidates; i++) {
+			PropLiteral l = getLiteral(CDCLSolver.var(candidates[i]));
+			backbone.add(candidates[i] > 0 ? l : makeUnConn(l, PropUnConn.NEG));
+		}
+		return backbone;
+	}
+	
+	// Enumerates the models of the kb projected onto the named (non-
+	// auxiliary) vars of its clauses (the vars countModels() counts over,
+	// less any aux vars), printing each one to os as soon as it is found.
+	// After every model a blocking clause excluding its projection is
+	// added, guarded by one activation literal for the whole enumeration
+	// (as in queryIncrementalSATSolver()) so it can be retired afterwards.
+	// Stops after max models if max > 0; returns the number printed.
+	public int enumerateModels(PrintStream os, int max) {
+		CDCLSolver solver = getIncrementalSolver();
+		int act = getNewLiteral()._nID;
+		solver.ensureVars(act);
+		
+		int[] named = getNamedClauseVars();
+		int num_models = 0;
+		while ((max <= 0 || num_models < max) && !solver.unsat(getAssumptions(act))) {
+			++num_models;
+			int[] block = new int[named.length + 1];
+			block[0] = -act;
+			StringBuffer sb = new StringBuffer("Model " + num_models + ":");
+			for (int i = 0; i < named.length; i++) {
+				boolean val = solver._model[named[i]] == SimpleDPLL.VAL_TRUE;
+				block[i + 1] = val ? -named[i] : named[i];
+				sb.append(" " + (val ? "" : "~") + getLiteral(named[i])._sName);
 			}
-
-			case 'T': {
-				if (cur_lit != null) {
-					System.out.println("Formula error: T occurs in prop lit");
-					System.exit(1);
-				}
-				if (neg) {
-					terms.add(new PropConstant(false));
-				} else {
-					terms.add(new PropConstant(true));
-				}
-				neg = false;
+			os.println(sb);
+			solver.addIncrementalClause(block);
+		}
+		solver.addIncrementalClause(new int[] { -act });
+		return num_models;
+	}
+	
+	// Counts the models of the kb exactly (see ModelCounter) over the 
+	// vars of its clauses (countClauseVars()), so literals only mentioned 
+	// by asks or by formulas that produced no clauses do not double the 
+	// count.  Tseitin aux vars are defined by the named vars so the count
+	// is the same, but Plaisted-Greenbaum aux vars are only constrained
+	// one way and may add models (see _bPGClauses).
+	public BigInteger countModels() {
+		return new ModelCounter().count(_alKbClauses, countClauseVars());
+	}
+	
+	// Number of distinct vars in the kb clauses
+	public int countClauseVars() {
+		return getClauseVars().cardinality();
+	}
+	
+	// Vars occurring in the kb clauses
+	public BitSet getClauseVars() {
+		BitSet vars = new BitSet(_nLiteralIDCount);
+		for (int[] clause : _alKbClauses)
+			for (int literal : clause)
+				vars.set(CDCLSolver.var(literal));
+		return vars;
+	}
+	
+	// Ids of the named vars occurring in the kb clauses
+	public int[] getNamedClauseVars() {
+		BitSet vars = getClauseVars();
+		int[] named = new int[vars.cardinality()];
+		int num_named = 0;
+		for (int id = vars.nextSetBit(1); id >= 0; id = vars.nextSetBit(id + 1))
+			if (!getLiteral(id)._sName.startsWith("<"))
+				named[num_named++] = id;
+		return Arrays.copyOf(named, num_named);
+	}
+	
+	// Returns the persistent solver after loading any kb clauses it 
+	// has not seen yet
+	public CDCLSolver getIncrementalSolver() {
+		if (_incSolver == null) {
+			_incSolver = new CDCLSolver();
+			configureSolver(_incSolver);
+			_incSolver.initIncremental(_nLiteralIDCount - 1);
+			_nIncSynced = 0;
+		}
+		_incSolver.ensureVars(_nLiteralIDCount - 1);
+		int scope = 0;
+		for (; _nIncSynced < _alKbClauses.size(); _nIncSynced++) {
+			// Clauses told inside a scope are guarded by its activation 
+			// literal (i.e., added as ~a | clause)
+			while (scope < _alScopes.size() && _alScopes.get(scope)._nClauseMark <= _nIncSynced)
+				++scope;
+			int[] clause = _alKbClauses.get(_nIncSynced);
+			if (scope > 0) {
+				int[] guarded = new int[clause.length + 1];
+				guarded[0] = -_alScopes.get(scope - 1)._nActivation;
+				System.arraycopy(clause, 0, guarded, 1, clause.length);
+				clause = guarded;
 			}
-				break;
+			_incSolver.addIncrementalClause(clause);
+		}
+		return _incSolver;
+	}
+	
+	// Assumptions for the persistent solver: the activation literals of
+	// all open scopes, plus act if not 0
+	public int[] getAssumptions(int act) {
+		int[] assumptions = new int[_alScopes.size() + (act != 0 ? 1 : 0)];
+		for (int i = 0; i < _alScopes.size(); i++)
+			assumptions[i] = _alScopes.get(i)._nActivation;
+		if (act != 0)
+			assumptions[assumptions.length - 1] = act;
+		return assumptions;
+	}
+	
+	////////////////////////////////////////////////////////////////////////////
+	// Scopes (push/pop)
+	////////////////////////////////////////////////////////////////////////////
 
-			case 'F': {
-				if (cur_lit != null) {
-					System.out.println("Formula error: F occurs in prop lit");
-					System.exit(1);
-				}
-				if (neg) {
-					terms.add(new PropConstant(true));
-				} else {
-					terms.add(new PropConstant(false));
+	// The state saved by push(): clauses told after it are the kb clauses
+	// from id _nClauseMark on, and the term clauses in _alAddedClauses
+	public static class KbScope {
+		public int _nClauseMark;
+		public long _nGeneration;
+		public int _nActivation;
+		public ArrayList<HashSet<PropFormula.Term>> _alAddedClauses;
+		public int _nKbStatus;
+		public byte[] _kbWitness;
+	}
+	
+	// Opens a scope: everything told until the matching pop() is 
+	// retracted by it.  The persistent solver sees the scope's clauses 
+	// guarded by a new activation literal, assumed true while the scope
+	// is open, so it keeps its clauses and learned clauses across pops.
+	public void push() {
+		KbScope scope = new KbScope();
+		scope._nClauseMark = _alKbClauses.size();
+		scope._nGeneration = _nKbGeneration;
+		scope._nActivation = getNewLiteral()._nID;
+		scope._alAddedClauses = new ArrayList<HashSet<PropFormula.Term>>();
+		scope._nKbStatus = _nKbStatus;
+		scope._kbWitness = _kbWitness;
+		_alScopes.add(scope);
+	}
+	
+	// Closes the innermost scope, retracting the clauses told in it, and
+	// returns their number (or -1 if no scope is open).  The kb is then
+	// the same as at the push(), so it gets that generation back and the
+	// cached answers computed since are dropped.
+	public int pop() {
+		if (_alScopes.isEmpty())
+			return -1;
+		KbScope scope = _alScopes.remove(_alScopes.size() - 1);
+		int retracted = _alKbClauses.size() - scope._nClauseMark;
+		_cnfCurrentKb.removeAll(scope._alAddedClauses);
+		while (_alKbClauses.size() > scope._nClauseMark)
+			_alKbClauses.remove(_alKbClauses.size() - 1);
+		
+		if (_incSolver != null) {
+			// Retire the scope's guarded clauses for good
+			_incSolver.ensureVars(scope._nActivation);
+			_incSolver.addIncrementalClause(new int[] { -scope._nActivation });
+			_nIncSynced = Math.min(_nIncSynced, scope._nClauseMark);
+		}
+		
+		Iterator<QueryAnswer> i = _hmQueryCache.values().iterator();
+		while (i.hasNext())
+			if (i.next()._nGeneration > scope._nGeneration)
+				i.remove();
+		_nKbGeneration = scope._nGeneration;
+		_nKbStatus = scope._nKbStatus;
+		_kbWitness = scope._kbWitness;
+		_bdd = null;
+		return retracted;
+	}
+	
+	// Hands the kb clauses and the negated query clauses to the solver
+	// as integer arrays (no DIMACS text in between)
+	public boolean queryInternalSATSolver(String query) {
+		return queryInternalSATSolver(getQueryClauses(query));
+	}
+	
+	public boolean queryInternalSATSolver(ArrayList<int[]> query_clauses) {
+		_lastModel = null;
+		Preprocessor pre = preprocess(query_clauses, _nLiteralIDCount - 1);
+		if (pre != null)
+			_lastPreprocessor = pre;
+		if (pre != null && pre._bUnsat)
+			return true;
+		SimpleDPLL dpll = newSolver();
+		if (pre != null)
+			loadClauses(dpll, pre);
+		else
+			loadClauses(dpll, query_clauses);
+		boolean unsat = dpll.unsat();
+		_lastModel = reconstructModel(pre, dpll._model);
+		return unsat;
+	}
+	
+	// The clauses of the negated query as DIMACS literal arrays
+	public ArrayList<int[]> getQueryClauses(String query) {
+		return getQueryClauses(getQueryKey(query));
+	}
+	
+	public ArrayList<int[]> getQueryClauses(PropFormula.Term negated) {
+		ArrayList<int[]> query_clauses = new ArrayList<int[]>();
+		for (HashSet<PropFormula.Term> clause : convertCNF(negated))
+			addIntClause(query_clauses, clause);
+		return query_clauses;
+	}
+	
+	// Answers a batch of queries against the unchanged kb, in order.
+	// Parsing creates literals and terms, so all queries are converted 
+	// to clauses first on this thread; the solves then only read the kb
+	// and run concurrently on pool, one new solver each.  The persistent,
+	// compiled and portfolio modes share state between asks and answer 
+	// the batch one query at a time.  A query that fails gets null, and
+	// the message saying why (e.g., a formula error) goes in the same
+	// slot of errors.  Cached answers are used and new ones stored as in
+	// querySATSolver().
+	public Boolean[] queryBatch(List<String> queries, ExecutorService pool, String[] errors) {
+		Boolean[] results = new Boolean[queries.size()];
+		if (_bdd != null || _bIncremental || _nPortfolioWorkers > 1) {
+			for (int i = 0; i < results.length; i++) {
+				try {
+					results[i] = querySATSolver(queries.get(i));
+				} catch (Exception e) {
+					errors[i] = getErrorMessage(e);
 				}
-				neg = false;
-
-			}
-				break;
-
-			case '~': {
-				neg = !neg;
 			}
-				break;
-
-			// Because of this style of parser, there are many incorrect
-			// ways to specify => that will still parse correctly, need
-			// to be careful!
-			case '=':
-			case '<':
-			case '^':
-			case '|':
-			case ' ':
-			case '\t':
-			case '\r':
-			case '\n': {
-
-				// We assume that only one of {^,|,=>} can occur per
-				// level so we set the implies flag
-				if (c == '<') {
-					if (conj || disj || implies) {
-						System.out
-								.println("Formula error: ^,|,=>,<=> at same level");
-						System.exit(1);
-					}
-					if (s.charAt(++pos) != '=') {
-						System.out
-								.println("Formula error: < must be followed by =");
-						System.exit(1);
-					}
-					if (s.charAt(++pos) != '>') {
-						System.out
-								.println("Formula error: <= must be followed by >");
-						System.exit(1);
-					}
-					equiv = true;
-				} else if (c == '=') {
-					if (conj || disj || equiv) {
-						System.out
-								.println("Formula error: ^,|,=>,<=> at same level");
-						System.exit(1);
-					}
-					if (s.charAt(++pos) != '>') {
-						System.out
-								.println("Formula error: = must be followed by >");
-						System.exit(1);
-					}
-					implies = true;
-				} else if (c == '^') {
-					if (implies || disj || equiv) {
-						System.out
-								.println("Formula error: ^,|,=>,<=> at same level");
-						System.exit(1);
-					}
-					conj = true;
-				} else if (c == '|') {
-					if (implies || conj || equiv) {
-						System.out
-								.println("Formula error: ^,|,=>,<=> at same level");
-						System.exit(1);
-					}
-					disj = true;
-				}
-
-				// Whitespace so break cur_lit
-				if (cur_lit != null) {
-					if (neg) {
-						terms.add(new PropUnConn(getLiteral(cur_lit),
-								PropFormula.UnConn.NEG));
-					} else {
-						terms.add(getLiteral(cur_lit));
+			return results;
+		}
+		
+		ArrayList<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+		ArrayList<PropFormula.Term> keys = new ArrayList<PropFormula.Term>();
+		ArrayList<ArrayList<int[]>> clauses = new ArrayList<ArrayList<int[]>>();
+		final byte[][] models = new byte[results.length][];
+		final Preprocessor[] pres = new Preprocessor[results.length];
+		for (int i = 0; i < results.length; i++) {
+			final int index = i;
+			futures.add(null);
+			keys.add(null);
+			clauses.add(null);
+			try {
+				keys.set(i, getQueryKey(queries.get(i)));
+				if ((results[i] = lookupQuery(keys.get(i))) != null)
+					continue;
+				final ArrayList<int[]> query_clauses = getQueryClauses(keys.get(i));
+				clauses.set(i, query_clauses);
+				final int nvars = _nLiteralIDCount - 1; // Vars known so far
+				futures.set(i, pool.submit(new Callable<Boolean>() {
+					public Boolean call() {
+						Preprocessor pre = preprocess(query_clauses, nvars);
+						pres[index] = pre;
+						if (pre != null && pre._bUnsat)
+							return true;
+						SimpleDPLL dpll = newSolver();
+						if (pre != null)
+							loadClauses(dpll, pre);
+						else
+							loadClauses(dpll, query_clauses, nvars);
+						boolean unsat = dpll.unsat();
+						models[index] = reconstructModel(pre, dpll._model);
+						return unsat;
 					}
-					cur_lit = null;
-					neg = false;
-				} else if (neg) {
-					System.out
-							.println("Formula error: ~ followed by whitespace?");
-					System.exit(1);
-				}
-
-			}
-				break;
-
-			default: {
-				// Interpret as a character
-				if (cur_lit == null) {
-					cur_lit = String.valueOf(c);
-				} else {
-					cur_lit = cur_lit + c;
-				}
-			}
-
+				}));
+			} catch (Exception e) {
+				errors[i] = getErrorMessage(e);
 			}
-
 		}
-
-		// First see if we need to close any literals
-		if (cur_lit != null) {
-			if (neg) {
-				terms.add(new PropUnConn(getLiteral(cur_lit),
-						PropFormula.UnConn.NEG));
-			} else {
-				terms.add(getLiteral(cur_lit));
+		for (int i = 0; i < results.length; i++) {
+			try {
+				if (futures.get(i) != null) {
+					results[i] = futures.get(i).get();
+					storeQuery(keys.get(i), clauses.get(i), results[i], models[i]);
+				}
+			} catch (ExecutionException e) {
+				errors[i] = getErrorMessage(e.getCause());
+			} catch (Exception e) {
+				errors[i] = getErrorMessage(e);
 			}
-			cur_lit = null;
-			neg = false;
+			if (pres[i] != null)
+				_lastPreprocessor = pres[i]; // The last ask in input order
 		}
-
-		// Now return the correct structure
-		ParseStruct ps = new ParseStruct();
-		ps._nFinalPos = pos;
-		if (conj) {
-			ps._propTerm = getConjTerm(terms);
-		} else if (disj) {
-			ps._propTerm = getDisjTerm(terms);
-		} else if (implies) {
-			ps._propTerm = getImpliesTerm(terms);
-		} else if (equiv) {
-			ps._propTerm = getEquivTerm(terms);
-		} else if (terms.size() == 1) {
-			ps._propTerm = (PropFormula.Term) terms.get(0);
-		} else {
-			System.out.println("Formula error: Malformed formula");
-			System.exit(1);
-		}
-		return ps;
-
+		return results;
 	}
-
-	public boolean querySATSolver(String query) {
-		return queryInternalSATSolver(query);
+	
+	// What to report for a failed query: formula errors carry their own
+	// message, anything else is shown as the exception
+	public static String getErrorMessage(Throwable e) {
+		return e instanceof FormulaParser.ParseException ? e.getMessage() : e.toString();
 	}
 	
-	public boolean queryInternalSATSolver(String query) {
-		ByteArrayOutputStream bs = new ByteArrayOutputStream();
-		exportDIMACSQuery(new PrintStream(bs), query);
-		BufferedReader br = new BufferedReader(new InputStreamReader(
-				new ByteArrayInputStream(bs.toByteArray())));
-		
-		SimpleDPLL dpll = new SimpleDPLL();
-
-		try {
-			dpll.readDIMACSFile(br);
-		} catch (Exception e) {
-			System.out.println("Error reading from DIMACS input:\n" + bs.toString());
-			System.exit(1); // Fail ungracefully
-		}
-		return dpll.unsat();
+	// Loads the kb clauses plus extra_clauses into a solver
+	public void loadClauses(SimpleDPLL dpll, ArrayList<int[]> extra_clauses) {
+		loadClauses(dpll, extra_clauses, _nLiteralIDCount - 1);
 	}
 	
-	public void exportDIMACSQuery(String filename, String query) {
-		try {
-			PrintStream os = new PrintStream(new FileOutputStream(filename));
-			exportDIMACSQuery(os, query);
-			os.close();
-		} catch (Exception e) {
-			System.out.println("ERROR EXPORTING '" + filename + "': " + e);
-			e.printStackTrace();
+	public void loadClauses(SimpleDPLL dpll, ArrayList<int[]> extra_clauses, int nvars) {
+		dpll.init(nvars, _alKbClauses.size() + extra_clauses.size());
+		for (int[] clause : _alKbClauses)
+			dpll.addClause(clause);
+		for (int[] clause : extra_clauses)
+			dpll.addClause(clause);
+	}
+	
+	// Loads the clauses left by a Preprocessor into a solver
+	public void loadClauses(SimpleDPLL dpll, Preprocessor pre) {
+		ArrayList<int[]> clauses = pre.getClauses();
+		dpll.init(pre._nVars, clauses.size());
+		for (int[] clause : clauses)
+			dpll.addClause(clause);
+	}
+	
+	// If _bPreprocess, simplifies the kb clauses plus extra_clauses (over
+	// vars 1..nvars) and returns the Preprocessor holding the result;
+	// otherwise returns null.  A model of the simplified clauses must be
+	// passed through reconstructModel() before it is used for the kb.
+	// Batch workers call this concurrently, so it records nothing: the
+	// caller sets _lastPreprocessor on its own thread.
+	public Preprocessor preprocess(ArrayList<int[]> extra_clauses, int nvars) {
+		if (!_bPreprocess)
+			return null;
+		Preprocessor pre = new Preprocessor(nvars);
+		for (int[] clause : _alKbClauses)
+			pre.addClause(clause);
+		for (int[] clause : extra_clauses)
+			pre.addClause(clause);
+		pre.preprocess();
+		return pre;
+	}
+	
+	// Extends a model of preprocessed clauses to all vars (pre may be null)
+	public static byte[] reconstructModel(Preprocessor pre, byte[] model) {
+		return pre == null || model == null ? model : pre.reconstruct(model);
+	}
+	
+	// Creates an internal solver of the currently selected type
+	public SimpleDPLL newSolver() {
+		SimpleDPLL solver = null;
+		switch (_nSolverType) {
+		case SOLVER_CDCL:     solver = new CDCLSolver(); break;
+		case SOLVER_PARALLEL: solver = new ParallelDPLL(); break;
+		default:              solver = new SimpleDPLL(); break;
 		}
+		configureSolver(solver);
+		return solver;
 	}
-
-	public void exportDIMACSQuery(PrintStream os, String query) {
-		
-		HashSet<HashSet<PropFormula.Term>> query_clauses = getFormula("~(" + query + ")");
-		query_clauses.addAll(_cnfCurrentKb);
-		
+	
+	// Applies the solver options to a solver
+	public void configureSolver(SimpleDPLL solver) {
+		if (_nBranchHeuristic != SimpleDPLL.BRANCH_DEFAULT)
+			solver._nBranchHeuristic = _nBranchHeuristic;
+		if (_nRestartPolicy != CDCLSolver.RESTART_DEFAULT && solver instanceof CDCLSolver)
+			((CDCLSolver)solver)._nRestartPolicy = _nRestartPolicy;
+		solver._bPhaseSaving = _bPhaseSaving;
+	}
+	
+	// Streams the kb clauses and the negated query clauses to a DIMACS 
+	// file (gzipped if filename ends in .gz) straight from _alKbClauses,
+	// preceded by a comment line mapping each literal name to its var
+	public void exportDIMACSQuery(String filename, String query) throws IOException {
+		ArrayList<int[]> query_clauses = getQueryClauses(query); // May add aux vars
+		DIMACSWriter out = new DIMACSWriter(filename, filename.endsWith(".gz"));
 		try {
-			os.println("p cnf " + (_nLiteralIDCount - 1) + " " + query_clauses.size());
-			
-			Iterator i = _alLiteralList.iterator();
-			while (i.hasNext()) {
-				Object o = i.next();
+			out.writeHeader(_nLiteralIDCount - 1, _alKbClauses.size() + query_clauses.size());
+			for (Object o : _alLiteralList) {
 				if (!(o instanceof PropLiteral)) 
 					continue;
 				PropLiteral l = (PropLiteral)o;
-				os.println("c " + l._sName + " -> #" + l._nID + " ");
-			}
-			for (HashSet<PropFormula.Term> clause : query_clauses) {
-				os.println(getDIMACSClause(clause));
+				out.writeComment(l._sName, l._nID);
 			}
-		} catch (Exception e) {
-			System.out.println("ERROR EXPORTING: " + e);
-			e.printStackTrace();
-		}
-	}
-	
-	public String getDIMACSClause(HashSet<PropFormula.Term> clause) {
-		StringBuilder sb = new StringBuilder();
-		for (PropFormula.Term t : clause) {
-			PropLiteral l = null;
-			if (t instanceof PropUnConn) {
-				l = (PropLiteral)((PropUnConn)t)._term;
-				sb.append("-" + l._nID + " ");
-			} else if (t instanceof PropLiteral) {
-				l = (PropLiteral)t;
-				sb.append(l._nID + " ");
-			} else 
-				return "MALFORMED CLAUSE: " + clause;
+			for (int[] clause : _alKbClauses)
+				out.writeClause(clause);
+			for (int[] clause : query_clauses)
+				out.writeClause(clause);
+		} finally {
+			out.close();
 		}
-		sb.append("0");
-		return sb.toString();
 	}
 }
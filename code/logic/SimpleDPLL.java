@@ -1,6 +1,7 @@
 package logic;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class SimpleDPLL {
 
@@ -12,26 +13,100 @@ public class SimpleDPLL {
 	public static final int EVAL_FALSE = 2;
 	public static final int EVAL_INDET = 3;
 	
-	public static final Boolean BOOL_TRUE  = new Boolean(true);
-	public static final Boolean BOOL_FALSE = new Boolean(false);
+	// Values stored in _assign (a literal's value is the var's value
+	// times the sign of the literal)
+	public static final byte VAL_TRUE       = 1;
+	public static final byte VAL_FALSE      = -1;
+	public static final byte VAL_UNASSIGNED = 0;
 	
-	public static final boolean USE_IMPROVED_VAR_SELECTION_HEURISTIC = false;
+	// Branching heuristics (BRANCH_DEFAULT leaves the solver's own choice)
+	public static final int BRANCH_DEFAULT           = -1;
+	public static final int BRANCH_SIMPLE            = 0;
+	public static final int BRANCH_MOST_CONSTRAINED  = 1;
+	public static final int BRANCH_VSIDS             = 2;
+	
+	// Initial phase of every var (the value tried first before any phase
+	// is saved)
+	public static final int POLARITY_TRUE    = 0;
+	public static final int POLARITY_FALSE   = 1;
+	public static final int POLARITY_RANDOM  = 2;
+	
+	// EVSIDS parameters: activities grow by _dVarInc, which is divided 
+	// by the decay after every conflict so recent conflicts weigh more
+	public static final double VAR_DECAY       = 0.95;
+	public static final double ACTIVITY_LIMIT  = 1e100;
 	
 	public String _sDIMACSFile;
 	public int _nClauses;
 	public int _nVars;
 	public int _nDepth; 
 	public int _nMaxDepth;
+	public int _nBranchHeuristic;
+	public boolean _bPhaseSaving;
+	public int _nPolarity;
+	
+	// Random source for POLARITY_RANDOM and for breaking the initial
+	// VSIDS ties (null keeps the search deterministic)
+	public Random _rand;
+	
+	// Shared flag that cancels the search when set (e.g., by another 
+	// solver that already finished); _bInterrupted then records that the
+	// result returned is meaningless
+	public AtomicBoolean _abStop;
+	public boolean _bInterrupted;
+	
+	// The satisfying assignment found by the last search (indexed by 
+	// var id), or null
+	public byte[] _model;
 
-	// An array of clauses (represented as sets of Integers)
-	public ArrayList<HashSet<Integer>> _clauses;
+	// All clauses in one flat arena: the first _nClauses are the input
+	// clauses, any others are learned.  Positions 0 and 1 of each clause 
+	// are its watched literals.
+	public ClauseArena _clauses;
+	
+	// Scratch buffer for reading clauses
+	public int[]     _clauseBuf;
 
-	// Truth assignment to each var (or null)
-	public Boolean[] _assign;
+	// Truth assignment to each var (VAL_TRUE, VAL_FALSE or VAL_UNASSIGNED)
+	public byte[]    _assign;
 	
 	// A counter of how often each literal appears in an active clause
 	public int[]     _assignCount;
 	
+	// Per-literal watch lists (indexed by litIndex()) of clause ids
+	public int[][]   _watches;
+	public int[]     _watchCount;
+	
+	// Assignment trail: every assigned literal in assignment order.
+	// _trailLim[d] is the trail position where decision level d+1 starts
+	// and literals from _nQueueHead on are not yet propagated.
+	public int[]     _trail;
+	public int       _nTrailSize;
+	public int[]     _trailLim;
+	public int       _nLevel;
+	public int       _nQueueHead;
+	
+	// Every input clause before _nSatHead is satisfied by the current
+	// assignment (see allSatisfied()); dpll() restores it on return
+	public int       _nSatHead;
+	
+	// Decision level and reason clause id (-1 for decisions and root 
+	// units) of each assigned var, and the last conflicting clause id
+	public int[]     _varLevel;
+	public int[]     _reason;
+	public int       _nConflict;
+	
+	// VSIDS activity of each var and the heap ordering unassigned vars 
+	// by activity (only used by BRANCH_VSIDS)
+	public double[]  _activity;
+	public double    _dVarInc;
+	public VarOrderHeap _order;
+	
+	// The value each var had when it was last unassigned, which is tried
+	// first when branching on it again (if _bPhaseSaving; otherwise it 
+	// keeps its initial phase)
+	public byte[]    _phase;
+	
 	///////////////////////////////////////////////////////////////////////////
 	// Constructor and helper methods
 	///////////////////////////////////////////////////////////////////////////
@@ -41,65 +116,59 @@ public class SimpleDPLL {
 		_nDepth = -1;
 		_nClauses = -1;
 		_nVars = -1;
-		_clauses = new ArrayList<HashSet<Integer>>();;
+		_nBranchHeuristic = BRANCH_SIMPLE;
+		_bPhaseSaving = false;
+		_nPolarity = POLARITY_TRUE;
+		_rand = null;
+		_abStop = null;
+		_bInterrupted = false;
+		_clauses = new ClauseArena();
+		_clauseBuf = new int[16];
 	}
 	
-	public void readDIMACSFile(String dimacs_file) {
+	// Reads a DIMACS CNF file into internal data structures (see 
+	// DIMACSReader); throws DIMACSReader.FormatException on bad input
+	public void readDIMACSFile(String dimacs_file) throws IOException {
 		_sDIMACSFile = dimacs_file;
-		try {
-			BufferedReader br = new BufferedReader(new FileReader(dimacs_file));
-			readDIMACSFile(br);
-		} catch (Exception e) {
-			System.out.println("Error reading '" + dimacs_file + "':\n" + e);
-			System.exit(1); // Fail ungracefully
-		}
+		new DIMACSReader(this).read(dimacs_file);
 	}
 	
-	// Read the DIMACS format into internal data structures
-	public void readDIMACSFile(BufferedReader br) throws Exception {
+	// Allocates space for var assignments and empties the clause arena
+	// (nclauses is only a size hint)
+	public void init(int nvars, int nclauses) {
+		_nVars = nvars;
+		
+		// Note: using 1-offset arrays so can directly index into var array
+		_assign = new byte[_nVars + 1]; // 0 index is a dummy index
+		_assignCount = new int[_nVars + 1];
+		_trail = new int[_nVars + 1];
+		_trailLim = new int[_nVars + 1];
+		_varLevel = new int[_nVars + 1];
+		_reason = new int[_nVars + 1];
+		
+		_nClauses = 0;
+		_clauses = new ClauseArena(nclauses, nclauses * 3);
+	}
 	
-		String line = null;
-		int clause_counter = 0;
-		while ((line = br.readLine()) != null) {
-			
-			// Discard comments
-			if (line.startsWith("c"))
-				continue;
-			
-			// Read the 'p' line and allocate space for clauses and var assignments
-			String[] split = line.split("[\\s]");
-			if (split[0].equals("p")) {
-				if (!split[1].equals("cnf")) {
-					System.out.println("Cannot handle non-cnf: '" + split[1] + "'");
-					System.exit(1); // Fail ungracefully
-				}
-				
-				_nVars = new Integer(split[2]); // Hope this is really an integer
-				
-				// Note: using 1-offset arrays so can directly index into var array
-				_assign = new Boolean[_nVars + 1]; // 0 index is a dummy index
-				_assignCount = new int[_nVars + 1];
-				
-				_nClauses = new Integer(split[3]); // Hope this is really an integer
-				_clauses.clear();
-				for (int i = 0; i < _nClauses; i++)
-					_clauses.add(new HashSet<Integer>());
-				
-				continue;
-			}
-			
-			// Must be a CNF line
-			HashSet<Integer> cur_clause = _clauses.get(clause_counter);
-			for (int index = 0; index < split.length - 1; index++)
-				cur_clause.add(new Integer(split[index]));
-			
-			if (!split[split.length - 1].equals("0")) {
-				System.out.println("Clause line '" + line + "' did not end in 0.");
-				System.exit(1); // Fail ungracefully					
-			}
-			++clause_counter;
-		}
-		br.close();
+	// Adds a copy of the input clause lits
+	public void addClause(int[] lits) {
+		if (_clauseBuf.length < lits.length)
+			_clauseBuf = new int[lits.length << 1];
+		System.arraycopy(lits, 0, _clauseBuf, 0, lits.length);
+		addClause(_clauseBuf, lits.length);
+	}
+	
+	// Adds an input clause given by lits[0..len), removing duplicate 
+	// literals (the clause is sorted in place to find them)
+	public void addClause(int[] lits, int len) {
+		Arrays.sort(lits, 0, len);
+		int unique = 0;
+		for (int k = 0; k < len; k++)
+			if (unique == 0 || lits[k] != lits[unique - 1])
+				lits[unique++] = lits[k];
+		_clauses.truncate(_nClauses); // Drop any learned clauses
+		_clauses.add(lits, 0, unique);
+		++_nClauses;
 	}
 
 	// Display CNF info and current variable assignment
@@ -109,24 +178,23 @@ public class SimpleDPLL {
 		sb.append("Variables: " + _nVars + "\n");
 		sb.append("Clauses:   " + _nClauses + "\n");
 		sb.append("Current assignment: " + getAssignString() + "\n");
-		int clause_id = 0;
-		for (HashSet<Integer> clause : _clauses) {
-			sb.append("#" + clause_id++ + ": [");
-			for (Integer literal : clause)
-				sb.append(" " + literal);
+		for (int clause_id = 0; clause_id < _clauses.size(); clause_id++) {
+			sb.append("#" + clause_id + ": [");
+			for (int k = 0; k < _clauses._length[clause_id]; k++)
+				sb.append(" " + _clauses.get(clause_id, k));
 			sb.append(" ]\n");
 			
 		}
 		return sb.toString();
 	}
 
-	// Prints the current non-null assignments
+	// Prints the current assignments
 	// NOTE: var_id's start at 1!
 	public String getAssignString() {
 		StringBuilder sb = new StringBuilder("[");
 		for (int var = 1; var < _assign.length; var++)
-			if (_assign[var] != null) 
-				sb.append(" " + var + "=" + (_assign[var] ? "T" : "F"));
+			if (_assign[var] != VAL_UNASSIGNED) 
+				sb.append(" " + var + "=" + (_assign[var] == VAL_TRUE ? "T" : "F"));
 		sb.append(" ]");
 		return sb.toString();
 	}
@@ -149,91 +217,354 @@ public class SimpleDPLL {
 		//System.out.println(this);
 		_nDepth = 0;
 		_nMaxDepth = 0;
-		HashSet<Integer> active_clauses = new HashSet<Integer>();
-		for (int i = 0; i < _nClauses; i++)
-			active_clauses.add(new Integer(i));
-		int var_branch = chooseBranchVarSimple();
-		return dpll(var_branch, true, active_clauses)
-			&& dpll(var_branch, false, active_clauses);
+		for (int var = 1; var <= _nVars; var++)
+			_assign[var] = VAL_UNASSIGNED;
+		_nTrailSize = 0;
+		_nQueueHead = 0;
+		_nLevel = 0;
+		_nSatHead = 0;
+		_bInterrupted = false;
+		_model = null;
+		initHeuristic();
+		
+		// Attach watches and assert unit clauses at the root, then
+		// propagate them before the first decision
+		if (initWatches() || propagate())
+			return true;
+		
+		int var_branch = allSatisfied() ? -1 : chooseBranchVar();
+		if (var_branch < 0) {
+			_model = getModel();
+			return false; // Everything was satisfied by unit propagation
+		}
+		boolean first = choosePhase(var_branch) > 0;
+		return dpll(var_branch, first) && dpll(var_branch, !first);
+	}
+	
+	// Copies the clauses, watches, trail and heuristic state into a new
+	// solver that can continue the search independently (e.g., on 
+	// another thread)
+	public SimpleDPLL copy() {
+		SimpleDPLL s = new SimpleDPLL();
+		s._nClauses = _nClauses;
+		s._nVars = _nVars;
+		s._nBranchHeuristic = _nBranchHeuristic;
+		s._bPhaseSaving = _bPhaseSaving;
+		s._nPolarity = _nPolarity;
+		s._abStop = _abStop;
+		s._clauses = _clauses.copy();
+		s._assign = _assign.clone();
+		s._assignCount = _assignCount.clone();
+		s._watches = new int[_watches.length][];
+		for (int i = 0; i < _watches.length; i++)
+			if (_watches[i] != null)
+				s._watches[i] = _watches[i].clone();
+		s._watchCount = _watchCount.clone();
+		s._trail = _trail.clone();
+		s._nTrailSize = _nTrailSize;
+		s._trailLim = _trailLim.clone();
+		s._nLevel = _nLevel;
+		s._nQueueHead = _nQueueHead;
+		s._nSatHead = _nSatHead;
+		s._varLevel = _varLevel.clone();
+		s._reason = _reason.clone();
+		s._phase = _phase.clone();
+		if (_order != null) {
+			s._activity = _activity.clone();
+			s._dVarInc = _dVarInc;
+			s._order = _order.copy(s._activity);
+		}
+		return s;
 	}
 	
-	// See if a clause evaluates to true or false (or neither = null) 
+	// Maps a DIMACS literal onto an index into the watch lists:
+	// v -> 2v and -v -> 2v+1
+	public static int litIndex(int literal) {
+		return literal > 0 ? (literal << 1) : ((-literal << 1) | 1);
+	}
+	
+	// See if a clause evaluates to true or false (or neither) 
 	// given current assignment in _assign.
-	public int evaluateClause(HashSet<Integer> clause) {
+	public int evaluateClause(int clause_id) {
 		
 		// Rule: if any literal is true, return EVAL_TRUE
 		//       else if all literals false, return EVAL_FALSE
 		//       else return EVAL_INDET
 		boolean all_literals_false = true;
-		for (Integer lit : clause) {
-			boolean neg = lit < 0;
-			Boolean assign = _assign[neg ? -lit : lit];
-			if (assign == null) {
+		int start = _clauses._start[clause_id];
+		int end = start + _clauses._length[clause_id];
+		for (int k = start; k < end; k++) {
+			int value = valueOf(_clauses._lits[k]);
+			if (value == VAL_UNASSIGNED) {
 				all_literals_false = false;
 				continue;
-			} else if (assign.booleanValue() == !neg) { // assign true, neg false -> satisfied
+			} else if (value == VAL_TRUE) {
 				return EVAL_TRUE;
 			} 
 		}
 		return all_literals_false ? EVAL_FALSE : EVAL_INDET;
 	}
+	
+	// Whether every input clause is satisfied by the current assignment,
+	// advancing _nSatHead past the satisfied clauses.  Assignments only
+	// grow until the next backtrack, so each clause is passed at most 
+	// once per branch.  The search can then stop without deciding vars
+	// that only occur in satisfied clauses (or in none).
+	public boolean allSatisfied() {
+		while (_nSatHead < _nClauses && (!_clauses.isActive(_nSatHead) || 
+				evaluateClause(_nSatHead) == EVAL_TRUE))
+			++_nSatHead;
+		return _nSatHead >= _nClauses;
+	}
+	
+	// A copy of the current assignment with every unassigned var set to
+	// its phase (any value satisfies the clauses once allSatisfied())
+	public byte[] getModel() {
+		byte[] model = Arrays.copyOf(_assign, _nVars + 1);
+		for (int var = 1; var <= _nVars; var++)
+			if (model[var] == VAL_UNASSIGNED)
+				model[var] = _phase[var];
+		return model;
+	}
+	
+	// Returns VAL_TRUE, VAL_FALSE or VAL_UNASSIGNED for a single literal
+	public int valueOf(int literal) {
+		return literal > 0 ? _assign[literal] : -_assign[-literal];
+	}
 
-	// Returns single literal if clause is a unit clause (or 0 if none)
-	// Watch variables would help efficiency here (see zChaff paper)
-	public int findUnit(HashSet<Integer> clause) {
-		int cur_unit = 0;
-		
-		// Because previous units may not have been propagated (yet), we
-		// should check for satisfied clauses and ignore them here
-		for (Integer literal : clause) {
+	// Drops learned clauses and attaches the two watched literals 
+	// (positions 0 and 1) of every input clause, see the zChaff paper.
+	// Unit clauses cannot be watched twice so they are enqueued directly.
+	// Returns *true* if the clauses are trivially UNSAT (an empty clause
+	// or two contradicting unit clauses).
+	public boolean initWatches() {
+		_clauses.truncate(_nClauses);
+		_watches = new int[(_nVars + 1) << 1][];
+		_watchCount = new int[(_nVars + 1) << 1];
+		boolean unsat = false;
+		for (int clause_id = 0; clause_id < _nClauses; clause_id++) {
+			if (!_clauses.isActive(clause_id))
+				continue;
+			int length = _clauses._length[clause_id];
+			if (length == 0)
+				unsat = true;
+			else if (length == 1)
+				unsat |= !enqueue(_clauses.get(clause_id, 0));
+			else
+				watchClause(clause_id);
+		}
+		return unsat;
+	}
+	
+	// Appends a clause lits[0..len) to the clause arena and watches its
+	// first two literals (if it has two).  Returns the new clause id.
+	public int attachClause(int[] lits, int len) {
+		int clause_id = _clauses.add(lits, 0, len);
+		if (len >= 2)
+			watchClause(clause_id);
+		return clause_id;
+	}
+	
+	// Watches the first two literals of a clause
+	public void watchClause(int clause_id) {
+		int start = _clauses._start[clause_id];
+		addWatch(_clauses._lits[start], clause_id);
+		addWatch(_clauses._lits[start + 1], clause_id);
+	}
+	
+	// Registers clause_id on the watch list for literal
+	public void addWatch(int literal, int clause_id) {
+		int index = litIndex(literal);
+		int[] list = _watches[index];
+		if (list == null)
+			list = _watches[index] = new int[4];
+		else if (_watchCount[index] == list.length)
+			list = _watches[index] = Arrays.copyOf(list, list.length << 1);
+		list[_watchCount[index]++] = clause_id;
+	}
+	
+	// Makes literal true and pushes it on the trail, which doubles as
+	// the propagation queue.  Returns *false* if the literal is already
+	// false (a conflict).
+	public boolean enqueue(int literal) {
+		return enqueue(literal, -1);
+	}
+	
+	// As above, but records the clause that implied the literal (its
+	// literal at position 0) for conflict analysis
+	public boolean enqueue(int literal, int reason) {
+		int value = valueOf(literal);
+		if (value != VAL_UNASSIGNED)
+			return value == VAL_TRUE;
+		int var_id = literal > 0 ? literal : -literal;
+		_assign[var_id] = literal > 0 ? VAL_TRUE : VAL_FALSE;
+		_varLevel[var_id] = _nLevel;
+		_reason[var_id] = reason;
+		_trail[_nTrailSize++] = literal;
+		return true;
+	}
+	
+	// Opens a new decision level on the trail
+	public void newDecisionLevel() {
+		_trailLim[_nLevel++] = _nTrailSize;
+	}
+	
+	// Backtracks by unassigning every literal above decision level 
+	// 'level'.  Watches remain valid so nothing else needs undoing.
+	public void cancelUntil(int level) {
+		if (_nLevel <= level)
+			return;
+		int lim = _trailLim[level];
+		for (int t = _nTrailSize - 1; t >= lim; t--) {
+			int literal = _trail[t];
 			int var_id = literal > 0 ? literal : -literal;
-			if (_assign[var_id] == null) {
-				if (cur_unit == 0)
-					cur_unit = literal;
-				else
-					return 0; // two unassigned vars found
-			} else if (_assign[var_id] == (literal > 0 ? true : false)) {
-				return 0; // This clause is satisfied, ignore it!
+			if (_bPhaseSaving)
+				_phase[var_id] = _assign[var_id];
+			_assign[var_id] = VAL_UNASSIGNED;
+			if (_order != null)
+				_order.insert(var_id);
+		}
+		_nTrailSize = lim;
+		_nQueueHead = lim;
+		_nLevel = level;
+	}
+
+	// Determines new assignments due to unit clauses and updates _assign.
+	// Only the clauses watching a falsified literal are visited: each
+	// such clause either finds a new non-false literal to watch, becomes
+	// unit (its other watch is enqueued) or is in conflict.  Watches 
+	// need no undo on backtracking (see cancelUntil()).  Returns *true* 
+	// if any clause was found to be unsatisfiable (UNSAT), whose id is 
+	// left in _nConflict.
+	public boolean propagate() {
+		
+		while (_nQueueHead < _nTrailSize) {
+			int false_lit = -_trail[_nQueueHead++];
+			int index = litIndex(false_lit);
+			int[] list = _watches[index];
+			int count = _watchCount[index];
+			int keep = 0;
+			
+			int[] lits = _clauses._lits;
+			
+			int w = 0;
+			for (; w < count; w++) {
+				int clause_id = list[w];
+				
+				// Lazily drop watches of removed clauses
+				if (!_clauses.isActive(clause_id))
+					continue;
+				int first = _clauses._start[clause_id];
+				int end = first + _clauses._length[clause_id];
+				
+				// Make sure the false literal is in position 1
+				if (lits[first] == false_lit) {
+					lits[first] = lits[first + 1];
+					lits[first + 1] = false_lit;
+				}
+				
+				// Clause already satisfied by the other watch
+				if (valueOf(lits[first]) == VAL_TRUE) {
+					list[keep++] = clause_id;
+					continue;
+				}
+				
+				// Look for a new literal to watch
+				boolean found = false;
+				for (int k = first + 2; k < end; k++) {
+					if (valueOf(lits[k]) != VAL_FALSE) {
+						lits[first + 1] = lits[k];
+						lits[k] = false_lit;
+						addWatch(lits[first + 1], clause_id);
+						found = true;
+						break;
+					}
+				}
+				if (found)
+					continue;
+				
+				// Clause is unit under the current assignment (or UNSAT)
+				list[keep++] = clause_id;
+				if (!enqueue(lits[first], clause_id)) {
+					//System.out.println(indent(_nDepth) + "UNSAT: " + 
+					//		Arrays.toString(_clauses.getClause(clause_id)) + 
+					//		" under " + getAssignString()); 
+					for (w++; w < count; w++)
+						list[keep++] = list[w];
+					_watchCount[index] = keep;
+					_nQueueHead = _nTrailSize;
+					_nConflict = clause_id;
+					return true; // Found UNSAT clause
+				}
 			}
+			_watchCount[index] = keep;
 		}
-		return cur_unit;
+		
+		return false; // Did not find an UNSAT clause
 	}
 	
-	// Copies assignments from _assign to a new Boolean array.
-	// Could be more efficient by preallocating these arrays for each
-	// level of the DPLL solution.
-	public Boolean[] copyAssignments() {
-		Boolean[] new_assign = new Boolean[_assign.length];
-		System.arraycopy(_assign, 0, new_assign, 0, _assign.length);
-		return new_assign;
+	// Choose the next variable to branch on with the selected heuristic
+	public int chooseBranchVar() {
+		switch (_nBranchHeuristic) {
+		case BRANCH_MOST_CONSTRAINED: return chooseBranchVarMostConstrained();
+		case BRANCH_VSIDS:            return chooseBranchVarVSIDS();
+		default:                      return chooseBranchVarSimple();
+		}
+	}
+	
+	// Returns the literal of var to try first: its saved (or initial)
+	// phase
+	public int choosePhase(int var) {
+		return _phase[var] == VAL_FALSE ? -var : var;
+	}
+	
+	// The initial phase of a var under the polarity option
+	public byte initialPhase() {
+		switch (_nPolarity) {
+		case POLARITY_FALSE:  return VAL_FALSE;
+		case POLARITY_RANDOM: return (_rand != null && _rand.nextBoolean()) ? VAL_TRUE : VAL_FALSE;
+		default:              return VAL_TRUE;
+		}
+	}
+	
+	// Whether another thread has asked this search to stop (sets 
+	// _bInterrupted)
+	public boolean stopRequested() {
+		if (_abStop != null && _abStop.get())
+			_bInterrupted = true;
+		return _bInterrupted;
 	}
 	
 	// Choose the next unassigned variable to branch on
 	public int chooseBranchVarSimple() {
 		for (int var = 1; var <= _nVars; var++)
-			if (_assign[var] == null)
+			if (_assign[var] == VAL_UNASSIGNED)
 				return var;
 		return -1;
 	}
 
-	// Choose the variable participating in the most clauses 
+	// Choose the variable participating in the most clauses that are
+	// not yet satisfied
 	// (a refinement of this would choose the most constrained literal
 	//  and potentially first explore the branch most likely to be satisfied)
-	public int chooseBranchVarMostConstrained(HashSet<Integer> active_clauses) {
+	public int chooseBranchVarMostConstrained() {
 
 		for (int v = 1; v < _assign.length; v++)
 			_assignCount[v] = 0;
 		
-		for (Integer clause_id : active_clauses) {
-			HashSet<Integer> clause = _clauses.get(clause_id);
-			for (Integer literal : clause)
+		for (int clause_id = 0; clause_id < _clauses.size(); clause_id++) {
+			if (!_clauses.isActive(clause_id) || evaluateClause(clause_id) == EVAL_TRUE)
+				continue;
+			for (int k = 0; k < _clauses._length[clause_id]; k++) {
+				int literal = _clauses.get(clause_id, k);
 				_assignCount[literal > 0 ? literal : -literal]++;
+			}
 		}
 		
 		int max_v = -1;
 		int max_count = -1;
 		for (int v = 1; v < _assign.length; v++) {
-			if (_assign[v] == null && _assignCount[v] > max_count) {
+			if (_assign[v] == VAL_UNASSIGNED && _assignCount[v] > max_count) {
 				max_v = v;
 				max_count = _assignCount[v];
 			}
@@ -242,98 +573,116 @@ public class SimpleDPLL {
 		return max_v;
 	}
 	
-	// Determines new assignments due to unit clauses and updates _assign.
-	// Repeats until no changes.  Modifies the set of active_clauses.
-	// Returns *true* if any clause was found to be unsatisfiable (UNSAT).
-	public boolean propagateUnit(HashSet<Integer> active_clauses) {
-		
-		int prop_units = 0;
-		
-		// Find all unit clauses and set their assignment 
-		for (Integer clause_id : active_clauses) {
-			int literal = findUnit(_clauses.get(clause_id));
-			//System.out.println("Found unit: " + _clauses.get(clause_id) + " : " + literal);
-			if (literal != 0) {
-				int prop_id = literal > 0 ? literal : -literal;
-				_assign[prop_id] = literal > 0 ? BOOL_TRUE : BOOL_FALSE;
-				//System.out.println(indent(_nDepth) + "Assign " + prop_id + 
-				//		"=" + _assign[prop_id] + " b/c of " + _clauses.get(clause_id));
-				prop_units++;
-			}
-		}		
-		
-		// Filter active_clauses... clone the set to be iterated since
-		// we might modify it
-		for (Integer clause_id : (HashSet<Integer>)active_clauses.clone()) {
-			int result = evaluateClause(_clauses.get(clause_id));
-			switch (result) {
-			case EVAL_FALSE: //System.out.println(indent(_nDepth) + "UNSAT: " + 
-					//_clauses.get(clause_id) + " under " + getAssignString()); 
-					return true; // Found UNSAT clause
-			case EVAL_TRUE:  active_clauses.remove(clause_id); 
-					break;
-			}
+	// Sets up the saved phases, and the activities and var heap if VSIDS
+	// is selected
+	public void initHeuristic() {
+		_phase = new byte[_nVars + 1];
+		for (int var = 1; var <= _nVars; var++)
+			_phase[var] = initialPhase();
+		_order = null;
+		if (_nBranchHeuristic != BRANCH_VSIDS)
+			return;
+		_activity = new double[_nVars + 1];
+		_dVarInc = 1d;
+		if (_rand != null) // Tiny random activities only break ties
+			for (int var = 1; var <= _nVars; var++)
+				_activity[var] = _rand.nextDouble() * 1e-5;
+		_order = new VarOrderHeap(_activity);
+		for (int var = 1; var <= _nVars; var++)
+			_order.insert(var);
+	}
+	
+	// Choose the unassigned variable with the highest activity, lazily
+	// discarding assigned vars from the heap (cancelUntil() puts them
+	// back when they are unassigned)
+	public int chooseBranchVarVSIDS() {
+		while (!_order.isEmpty()) {
+			int var = _order.removeMax();
+			if (_assign[var] == VAL_UNASSIGNED)
+				return var;
 		}
-		
-		// If unit assignments were made, could have created new unit
-		// clauses, so need to repeat
-		if (prop_units > 0)
-			return propagateUnit(active_clauses);
-		else
-			return false; // Did not find an UNSAT clause
+		return -1;
+	}
+	
+	// Increases the activity of var, rescaling everything when the
+	// activities get too large (rescaling keeps the heap order)
+	public void bumpVarActivity(int var) {
+		if ((_activity[var] += _dVarInc) > ACTIVITY_LIMIT) {
+			for (int v = 1; v <= _nVars; v++)
+				_activity[v] *= 1d / ACTIVITY_LIMIT;
+			_dVarInc *= 1d / ACTIVITY_LIMIT;
+		}
+		_order.increased(var);
+	}
+	
+	// Decays all activities (by growing the increment instead)
+	public void decayVarActivity() {
+		_dVarInc *= 1d / VAR_DECAY;
+	}
+	
+	// Without learned clauses, DPLL bumps the vars of each conflicting
+	// clause so that the search focuses on the conflicting vars
+	public void bumpConflict(int clause_id) {
+		if (_order == null)
+			return;
+		for (int k = 0; k < _clauses._length[clause_id]; k++) {
+			int literal = _clauses.get(clause_id, k);
+			bumpVarActivity(literal > 0 ? literal : -literal);
+		}
+		decayVarActivity();
 	}
 
-	// The standard DPLL interface, takes the next variable assignment and the
-	// set of currently unsatisfied clauses and returns whether they are 
-	// satisfiable (true) or not (false).
-	//
-	// Note: One should typically take care *not* to call new() in this code,
-	//       but I have done so since I am aiming for clarity over efficiency.
-	public boolean dpll(int var_id, boolean var_assign, HashSet<Integer> active_clauses) {
+	// The standard DPLL interface, takes the next variable assignment
+	// and returns whether the clauses are unsatisfiable (true) or not 
+	// (false) under it.  The search stops with a model as soon as every
+	// input clause is satisfied (see allSatisfied()).  Each call opens a
+	// decision level on the trail and undoes it on return, so the search
+	// allocates nothing.
+	public boolean dpll(int var_id, boolean var_assign) {
+		
+		if (stopRequested())
+			return true; // Unwinds at once (the result is ignored)
 		
 		++_nDepth;
 		if (_nDepth > _nMaxDepth)
 			_nMaxDepth = _nDepth;
 		
-		//System.out.println(indent(_nDepth) + var_id + " = " + var_assign + " : " + active_clauses);
-		Boolean unsat = null;
-		active_clauses = (HashSet<Integer>)active_clauses.clone();
+		//System.out.println(indent(_nDepth) + var_id + " = " + var_assign);
+		boolean unsat;
 		
-		// Make new assignment for var_id so we can undo before returning
-		Boolean[] temp_assign = _assign;
-		_assign = copyAssignments();
-		_assign[var_id] = var_assign ? BOOL_TRUE : BOOL_FALSE;
+		// Open a decision level for var_id so we can undo before returning
+		int level = _nLevel;
+		int sat_head = _nSatHead;
+		newDecisionLevel();
+		enqueue(var_assign ? var_id : -var_id);
 		
-		// Propagate unit will modify the set of active_clauses and return
-		// true if a clause was found to be unsatisfiable.
-		if (propagateUnit(active_clauses)) { 
-			// Propagate unit clauses and filter out SAT clauses; detect UNSAT
-			unsat = BOOL_TRUE;
-		} else if (active_clauses.isEmpty()) {
-			// Clause set can only be empty because all clauses were satisfied 
-			// and removed
-			unsat = BOOL_FALSE;
-		}
-		
-		// If indeterminate, need to branch again
-		if (unsat == null) {
-			int var_to_branch_on = -1;
-			if (USE_IMPROVED_VAR_SELECTION_HEURISTIC)
-				var_to_branch_on = chooseBranchVarMostConstrained(active_clauses);
-			else
-				var_to_branch_on = chooseBranchVarSimple();
+		// Propagate unit clauses from the watch lists; detect UNSAT
+		if (propagate()) { 
+			bumpConflict(_nConflict);
+			unsat = true;
+		} else {
+			int var_to_branch_on = allSatisfied() ? -1 : chooseBranchVar();
 			
-			// Only unsatisfiable if both branches are unsatisfiable
-			unsat = dpll(var_to_branch_on, true, active_clauses)
-			        && dpll(var_to_branch_on, false, active_clauses);
+			// Every clause satisfied without conflict
+			if (var_to_branch_on < 0) {
+				_model = getModel();
+				unsat = false;
+			}
+			else {
+				// Only unsatisfiable if both branches are unsatisfiable
+				boolean first = choosePhase(var_to_branch_on) > 0;
+				unsat = dpll(var_to_branch_on, first)
+				        && dpll(var_to_branch_on, !first);
+			}
 		}
 			
-		// Undo assignment for var_id
-		_assign = temp_assign;
+		// Undo all assignments made at or below this level
+		cancelUntil(level);
+		_nSatHead = sat_head;
 		
 		--_nDepth;
 		//System.out.println(indent(_nDepth) + "--> " + unsat);
-		return unsat == null ? false : (unsat.booleanValue());
+		return unsat;
 	}
 	
 	///////////////////////////////////////////////////////////////////////////
@@ -349,7 +698,12 @@ public class SimpleDPLL {
 		SimpleDPLL dpll = new SimpleDPLL();
 
 		for (String filename : args) {
-			dpll.readDIMACSFile(filename);
+			try {
+				dpll.readDIMACSFile(filename);
+			} catch (IOException e) {
+				System.out.println("Error reading '" + filename + "': " + e.getMessage());
+				continue;
+			}
 			//System.out.println(dpll); // Show DIMACS file
 			long cur_time = System.currentTimeMillis();
 			System.out.print(filename + " -> " 
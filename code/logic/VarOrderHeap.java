@@ -0,0 +1,106 @@
+package logic;
+import java.util.*;
+
+// An indexed binary max-heap of var ids ordered by an external activity
+// array (as used by the VSIDS branching heuristic).  The position of
+// every var in the heap is tracked so that a var whose activity was
+// bumped can be moved up in O(log n) without searching for it.
+public class VarOrderHeap {
+
+	public double[] _activity; // Shared with the solver, indexed by var id
+	public int[] _heap;        // Heap of var ids
+	public int[] _indices;     // Position of each var in _heap (or -1)
+	public int   _nSize;
+
+	public VarOrderHeap(double[] activity) {
+		_activity = activity;
+		_heap = new int[activity.length];
+		_indices = new int[activity.length];
+		Arrays.fill(_indices, -1);
+		_nSize = 0;
+	}
+
+	// Switches to a (grown) activity array, making room for its vars
+	public void resize(double[] activity) {
+		int old_length = _indices.length;
+		_activity = activity;
+		_heap = Arrays.copyOf(_heap, activity.length);
+		_indices = Arrays.copyOf(_indices, activity.length);
+		Arrays.fill(_indices, old_length, activity.length, -1);
+	}
+
+	// A copy of this heap ordered by a copy of the activity array
+	public VarOrderHeap copy(double[] activity) {
+		VarOrderHeap heap = new VarOrderHeap(activity);
+		heap._heap = _heap.clone();
+		heap._indices = _indices.clone();
+		heap._nSize = _nSize;
+		return heap;
+	}
+
+	public boolean isEmpty() {
+		return _nSize == 0;
+	}
+
+	public boolean contains(int var) {
+		return _indices[var] >= 0;
+	}
+
+	// Adds var if it is not already in the heap
+	public void insert(int var) {
+		if (_indices[var] >= 0)
+			return;
+		_indices[var] = _nSize;
+		_heap[_nSize++] = var;
+		percolateUp(_indices[var]);
+	}
+
+	// Restores the heap order after the activity of var increased
+	public void increased(int var) {
+		if (_indices[var] >= 0)
+			percolateUp(_indices[var]);
+	}
+
+	// Removes and returns the var with the highest activity
+	public int removeMax() {
+		int var = _heap[0];
+		_heap[0] = _heap[--_nSize];
+		_indices[_heap[0]] = 0;
+		_indices[var] = -1;
+		if (_nSize > 1)
+			percolateDown(0);
+		return var;
+	}
+
+	public void percolateUp(int pos) {
+		int var = _heap[pos];
+		while (pos > 0) {
+			int parent = (pos - 1) >> 1;
+			if (_activity[_heap[parent]] >= _activity[var])
+				break;
+			_heap[pos] = _heap[parent];
+			_indices[_heap[pos]] = pos;
+			pos = parent;
+		}
+		_heap[pos] = var;
+		_indices[var] = pos;
+	}
+
+	public void percolateDown(int pos) {
+		int var = _heap[pos];
+		while (true) {
+			int child = (pos << 1) + 1;
+			if (child >= _nSize)
+				break;
+			if (child + 1 < _nSize && _activity[_heap[child + 1]] > _activity[_heap[child]])
+				child++;
+			if (_activity[_heap[child]] <= _activity[var])
+				break;
+			_heap[pos] = _heap[child];
+			_indices[_heap[pos]] = pos;
+			pos = child;
+		}
+		_heap[pos] = var;
+		_indices[var] = pos;
+	}
+}